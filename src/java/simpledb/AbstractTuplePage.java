@@ -0,0 +1,185 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Base class of TuplePages that are a view over a buffer holding their
+ * on-disk image. The buffer may be a frame of the buffer pool's off-heap
+ * {@link PageArena}, or a read-only mapping of the table file that is copied
+ * when the page is first modified. Subclasses read the image through
+ * {@link #image} and make changes through {@link #writableData}, which also
+ * captures the before image on the first change.
+ * <p>
+ * Every read of the image holds the page's monitor, the page latch that
+ * writers and {@link #detach} take too. The buffer pool hands a frame to
+ * another page only once detach has returned, so a read in progress never
+ * decodes the bytes of another page.
+ */
+public abstract class AbstractTuplePage implements TuplePage, FramedPage {
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int pageSize; //bytes of the page image, set by the page's file
+    private volatile ByteBuffer m_data; //the page image
+
+    byte[] oldData; //before image, or null while the page is unchanged since it was last set
+    private final Byte oldDataLock=new Byte((byte)0);
+
+    private boolean m_dirty;
+    private TransactionId m_trid;
+
+    /**
+     * Create a page that views the page image in frame. The page reads and
+     * writes frame directly, so the caller must not reuse it until the page
+     * has been {@link #detach}ed.
+     */
+    protected AbstractTuplePage(HeapPageId id, ByteBuffer frame) {
+        m_dirty = false;
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.pageSize = Database.getCatalog().getDatabaseFile(id.getTableId()).getPageSize();
+        m_data = frame;
+
+        // the image just read is the before image; it is captured on the first change
+        oldData = null;
+    }
+
+    /**
+     * Create a page of the same class from a copy of its image.
+     */
+    protected abstract AbstractTuplePage newPage(byte[] data) throws IOException;
+
+    /**
+     * @return the page image; callers use absolute gets or a duplicate, and
+     *   hold the page's monitor until they are done with it
+     */
+    protected ByteBuffer image() {
+        return m_data;
+    }
+
+    /**
+     * Copy the page image out of the frame it views onto the heap, so that
+     * the frame can be given to another page. Anyone still holding this page
+     * keeps seeing its contents.
+     */
+    public synchronized void detach() {
+        ByteBuffer src = m_data.duplicate();
+        src.clear();
+        ByteBuffer copy = ByteBuffer.allocate(src.capacity());
+        copy.put(src);
+        m_data = copy;
+    }
+
+    /**
+     * Return the page image for modification, first copying it out of a
+     * read-only buffer such as a memory mapping of the table file.
+     */
+    protected ByteBuffer writableData() {
+        synchronized(oldDataLock)
+        {
+            if (oldData == null) { // first change since the before image was set
+                ByteBuffer data = m_data;
+                if (data.hasArray() && !data.isReadOnly() && data.arrayOffset() == 0
+                        && data.array().length == pageSize) {
+                    // a private heap image: keep it as the before image and carry on with a copy
+                    oldData = data.array();
+                    m_data = ByteBuffer.wrap(oldData.clone());
+                } else {
+                    oldData = getPageData();
+                }
+            }
+        }
+        if (m_data.isReadOnly())
+            detach();
+        return m_data;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public AbstractTuplePage getBeforeImage(){
+        try {
+            byte[] oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                oldDataRef = oldData;
+            }
+            if (oldDataRef == null) // unchanged, so the current image is the before image
+                oldDataRef = getPageData();
+            return newPage(oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        // nothing to copy until the page changes again, see writableData
+        synchronized(oldDataLock)
+        {
+        oldData = null;
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     * <p>
+     * The invariant here is that it should be possible to pass the byte
+     * array generated by getPageData to the page's constructor and
+     * have it produce an identical page object.
+     *
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public synchronized byte[] getPageData() {
+        byte[] data = new byte[pageSize];
+        getPageImage().get(data);
+        return data;
+    }
+
+    // see FramedPage.java for javadocs
+    public ByteBuffer getPageImage() {
+        ByteBuffer image = m_data.asReadOnlyBuffer();
+        image.clear();
+        image.limit(pageSize);
+        return image;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        m_dirty = dirty;
+        if(dirty) {
+            m_trid = tid;
+        } else {
+            m_trid = null;
+        }
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        if(m_dirty)
+            return m_trid;
+        else
+            return null;
+    }
+
+    // see TuplePage.java for javadocs
+    public Iterator<Tuple> iterator() {
+        return new HeapPageIterator(this);
+    }
+}
@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * BackgroundWriter is a daemon thread that writes dirty pages of a
+ * {@link BufferPool} out ahead of eviction, so that a query needing a frame
+ * usually finds a clean victim instead of waiting on a synchronous write.
+ * <p>
+ * Writing starts once the number of dirty pages rises above the high
+ * watermark and continues, at most maxPagesPerRound pages every interval,
+ * until it falls to the low watermark. Pages go through
+ * {@link BufferPool#writeBehind}, which logs and forces their UPDATE records
+ * before writing them.
+ * <p>
+ * The defaults can be overridden with the system properties
+ * simpledb.bgwriter.high, simpledb.bgwriter.low (fractions of the pool),
+ * simpledb.bgwriter.maxPages and simpledb.bgwriter.intervalMillis.
+ */
+public class BackgroundWriter implements Runnable {
+
+    /** Fraction of the pool that may be dirty before writing starts. */
+    public static final double DEFAULT_HIGH_WATERMARK = 0.5;
+    /** Fraction of the pool left dirty once writing stops. */
+    public static final double DEFAULT_LOW_WATERMARK = 0.25;
+    /** Maximum number of pages written per round. */
+    public static final int DEFAULT_MAX_PAGES_PER_ROUND = 32;
+    /** Milliseconds between rounds. */
+    public static final long DEFAULT_INTERVAL = 100;
+
+    private final BufferPool m_pool;
+    private final int m_high;
+    private final int m_low;
+    private final int m_maxPagesPerRound;
+    private final long m_interval;
+
+    private volatile boolean m_running;
+    private Thread m_thread;
+    private boolean m_draining;
+    private long m_pagesWritten;
+
+    /**
+     * Create a writer for pool using the watermarks and rate configured
+     * through system properties, or the defaults.
+     */
+    public BackgroundWriter(BufferPool pool) {
+        this(pool,
+             doubleProperty("simpledb.bgwriter.high", DEFAULT_HIGH_WATERMARK),
+             doubleProperty("simpledb.bgwriter.low", DEFAULT_LOW_WATERMARK),
+             Integer.getInteger("simpledb.bgwriter.maxPages", DEFAULT_MAX_PAGES_PER_ROUND),
+             Long.getLong("simpledb.bgwriter.intervalMillis", DEFAULT_INTERVAL));
+    }
+
+    /**
+     * @param pool the buffer pool to write for
+     * @param high fraction of the pool's frames that may be dirty before writing starts
+     * @param low fraction of the pool's frames left dirty once writing stops
+     * @param maxPagesPerRound maximum number of pages written per round
+     * @param intervalMillis milliseconds between rounds
+     */
+    public BackgroundWriter(BufferPool pool, double high, double low,
+                            int maxPagesPerRound, long intervalMillis) {
+        if (low < 0 || low > high || high > 1 || maxPagesPerRound < 1 || intervalMillis < 1)
+            throw new IllegalArgumentException("bad background writer settings");
+        m_pool = pool;
+        m_high = (int) (high * pool.getNumPages());
+        m_low = (int) (low * pool.getNumPages());
+        m_maxPagesPerRound = maxPagesPerRound;
+        m_interval = intervalMillis;
+    }
+
+    private static double doubleProperty(String name, double def) {
+        String value = System.getProperty(name);
+        return value == null ? def : Double.parseDouble(value);
+    }
+
+    /** Start the writer thread. */
+    public synchronized void start() {
+        if (m_thread != null)
+            return;
+        m_running = true;
+        m_thread = new Thread(this, "simpledb-bgwriter");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /** Stop the writer thread and wait for its current round to finish. */
+    public void shutdown() {
+        Thread t;
+        synchronized (this) {
+            m_running = false;
+            t = m_thread;
+            m_thread = null;
+        }
+        if (t == null || t == Thread.currentThread())
+            return;
+        // wake it with notify rather than interrupt, which would close the
+        // FileChannel of a table it happens to be writing
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @return the number of pages written by this writer so far */
+    public synchronized long getPagesWritten() {
+        return m_pagesWritten;
+    }
+
+    /**
+     * Run one round: decide whether the pool is above its high watermark
+     * (or still draining towards the low one) and write a batch if so.
+     *
+     * @return the number of pages written
+     */
+    public int writeRound() throws IOException {
+        int dirty = m_pool.getDirtyPageCount();
+        if (dirty > m_high)
+            m_draining = true;
+        if (!m_draining)
+            return 0;
+        int written = m_pool.writeBehind(m_low, m_maxPagesPerRound);
+        if (written == 0 || dirty - written <= m_low)
+            m_draining = false;
+        synchronized (this) {
+            m_pagesWritten += written;
+        }
+        return written;
+    }
+
+    public void run() {
+        while (m_running) {
+            synchronized (this) {
+                try {
+                    wait(m_interval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (!m_running)
+                return;
+            try {
+                writeRound();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
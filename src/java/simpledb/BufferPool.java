@@ -2,9 +2,11 @@ package simpledb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -15,6 +17,12 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Tables may have pages of different sizes (see {@link DbFile#getPageSize}).
+ * The pool holds at most numPages pages, and at most numPages pages' worth
+ * of bytes at the default page size, so a pool of large pages holds fewer
+ * of them. In off-heap mode only pages of the default size are read into
+ * the arena; others are read onto the heap.
  * 
  * @Threadsafe, all fields are final
  */
@@ -29,23 +37,103 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Maximum number of pages logged under a single log force. */
+    private static final int WAL_BATCH = 64;
+
     private int m_numpages; //maximum number of pages
-    private LinkedList<Page> m_pages;
+    private long m_maxBytes; //maximum bytes of resident pages
+    private long m_bytes; //bytes of resident pages
+    private HashMap<PageId, Integer> m_pageBytes; //resident page -> its size
+    private HashMap<PageId, Page> m_pageTable; //page id -> resident page
+    private EvictionPolicy m_policy; //decides which page to give up when the pool is full
+    private HashSet<PageId> m_ringPages; //pages read through a scan ring and not requested by anyone else since
+    private LockManager m_lockManager; //page locks of running transactions
+    private HashMap<TransactionId, HashMap<PageId, Page>> m_stolen; //before images of uncommitted pages written to disk
+    private HashMap<PageId, Boolean> m_loading; //pages being read ahead -> false once discarded while in flight
+    private PageArena m_arena; //off-heap frames pages are read into, or null to read onto the heap
+    private HashMap<PageId, Integer> m_frames; //resident page -> arena frame it views
+    
+    /** Victim filter that only accepts pages that can be dropped without a write. */
+    private final EvictionPolicy.VictimFilter m_cleanOnly = new EvictionPolicy.VictimFilter() {
+        public boolean accept(PageId pid) {
+            Page p = m_pageTable.get(pid);
+            return p != null && p.isDirty() == null;
+        }
+    };
     
-    private PageId m_mru; //most recently used page
-    private PageId m_lru; //least recently used page
+    /** Victim filter that accepts any resident page. */
+    private final EvictionPolicy.VictimFilter m_anyPage = new EvictionPolicy.VictimFilter() {
+        public boolean accept(PageId pid) {
+            return true;
+        }
+    };
     
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, replacing pages
+     * in least recently used order.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, EvictionPolicy.Kind.LRU);
+    }
+    
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the page replacement policy to use
+     */
+    public BufferPool(int numPages, EvictionPolicy.Kind policy) {
+        this(numPages, policy, false);
+    }
+    
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the page replacement policy to use
+     * @param offHeap whether pages are read into frames of a preallocated
+     *   off-heap {@link PageArena} rather than into buffers allocated per read
+     */
+    public BufferPool(int numPages, EvictionPolicy.Kind policy, boolean offHeap) {
         // some code goes here
     	m_numpages = numPages;
-    	m_pages = new LinkedList<Page>();
-    	m_mru = null;
-    	m_lru = null;
+    	m_maxBytes = (long) numPages * getPageSize();
+    	m_bytes = 0;
+    	m_pageBytes = new HashMap<PageId, Integer>(numPages * 2);
+    	m_pageTable = new HashMap<PageId, Page>(numPages * 2);
+    	m_policy = policy.create(numPages);
+    	m_ringPages = new HashSet<PageId>();
+    	m_lockManager = new LockManager();
+    	m_stolen = new HashMap<TransactionId, HashMap<PageId, Page>>();
+    	m_loading = new HashMap<PageId, Boolean>();
+    	m_frames = new HashMap<PageId, Integer>();
+    	//read-ahead holds a frame per reader thread while the read is in flight
+    	m_arena = offHeap ? new PageArena(numPages + ReadAhead.THREADS, getPageSize()) : null;
+    }
+    
+    /**
+     * @return the lock manager guarding the pages of this buffer pool; its
+     *   deadlock and wait time counters are useful for monitoring
+     */
+    public LockManager getLockManager() {
+    	return m_lockManager;
+    }
+    
+    /**
+     * @return the maximum number of pages this buffer pool caches
+     */
+    public int getNumPages() {
+    	return m_numpages;
+    }
+    
+    /**
+     * @return the arena holding the frames of resident pages, or null if
+     *   this pool reads pages onto the heap
+     */
+    public PageArena getArena() {
+    	return m_arena;
     }
     
     public static int getPageSize() {
@@ -73,69 +161,240 @@ public class BufferPool {
      * @param perm the requested permissions on the page
      */
     
-    public Page findPage(PageId pid) {
+    public synchronized Page findPage(PageId pid) {
     	if(pid==null)
     		return null;
-    	for(Page p: m_pages) { //iterate through the list of pages
-    		if(p!=null && p.getId().equals(pid)) { //found it!
-    			return p;
-    		}
-    	}
-    	
-    	return null;
+    	return m_pageTable.get(pid);
     }
     
-    public Page findPageAndUpdate(PageId pid) { //use iterator so that it doesn't have to search through linearly
-    											//when removing and placing the requested page at the end
+    public synchronized Page findPageAndUpdate(PageId pid) { //hash lookup, then let the policy record the hit
     	if(pid==null)
     		return null;
     	
-    	Iterator<Page> itr = m_pages.iterator();
+    	Page page = m_pageTable.get(pid);
+    	if(page!=null)
+    		m_policy.pageAccessed(pid);
+    	return page;
+    }
+    
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException, DbException, IllegalArgumentException {
+    	return getPage(tid, pid, perm, null);
+    }
+    
+    /**
+     * Retrieve the specified page on behalf of a large sequential scan.
+     * Behaves like {@link #getPage(TransactionId, PageId, Permissions)},
+     * except that on a miss the page is read into a frame recycled from the
+     * scan's private ring instead of one chosen by the eviction policy, so
+     * that the scan cannot flush the working set of other queries.
+     *
+     * @param ring the scan's ring, or null for a normal access
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+        throws TransactionAbortedException, DbException, IllegalArgumentException {
+        // some code goes here
+    	//block for the lock before taking the pool monitor, so waiters don't stall everyone else
+    	boolean wasLocked = tid==null || m_lockManager.holdsLock(tid, pid);
+    	if(tid!=null)
+    		m_lockManager.acquire(tid, pid, perm);
     	
-    	while(itr.hasNext()) {
-    		HeapPage tempPg = (HeapPage)itr.next();
-    		if(tempPg.getId().equals(pid)) {
-    			//maintain the order by placing the accessed page at the end
-    			//the m_pages[0] is always the least recently used page
-    			itr.remove();
-    			m_pages.add(tempPg);
-    			return tempPg;
+    	try {
+    		synchronized(this) {
+    			return fetchPage(pid, ring);
     		}
+    	} catch(IllegalArgumentException e) {
+    		//no such page; don't keep a lock on it that would stall whoever appends it
+    		if(!wasLocked)
+    			m_lockManager.release(tid, pid);
+    		throw e;
     	}
-    	
-    	return null;
     }
     
-    public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
-        throws TransactionAbortedException, DbException, IllegalArgumentException {
-        // some code goes here
+    private Page fetchPage(PageId pid, ScanRing ring)
+        throws DbException, IllegalArgumentException {
+    	boolean interrupted = false;
+    	while(m_loading.containsKey(pid)) { //a read-ahead is bringing the page in; don't read it twice
+    		try {
+    			wait();
+    		} catch(InterruptedException e) {
+    			interrupted = true; //reads must not run interrupted, they would close the channel
+    		}
+    	}
+    	if(interrupted)
+    		Thread.currentThread().interrupt();
+    	
     	Page result = findPageAndUpdate(pid);
     	if(result!=null) {
-    		m_mru = pid; //update the most recently used page
-    		m_lru = m_pages.get(0).getId(); //update the lru
+    		if(ring==null)
+    			m_ringPages.remove(pid); //the page is shared now; scans must not recycle it
     		return result;
     	}    	
     	
     	//page not found in the buffer pool!
-    	if(m_pages.size()==m_numpages) { //buffer pool is full
+    	int bytes = pageSize(pid);
+    	if(ring!=null && recycleRingFrame(ring)) {
+    		//the ring gave back one of its own frames
+    	}
+    	while(!hasRoom(bytes) && !m_pageTable.isEmpty()) { //buffer pool is full
     		evictPage();
-    	} else if(m_pages.size()>m_numpages) {
-    		System.err.println("buffer over the limit");
-    		System.exit(1);
     	}
     	
     	//find the target page from the database to insert
-    	Page newPage = null;
-    	newPage = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-    	m_pages.add(newPage);
+    	int frameNo = takeFrame(bytes);
+    	Page newPage = readPage(pid, frameNo);
+    	addPage(pid, newPage, bytes);
+    	adoptFrame(pid, newPage, frameNo);
+    	m_policy.pageAdded(pid);
+    	if(ring!=null) {
+    		ring.add(pid);
+    		m_ringPages.add(pid);
+    	}
     	
-    	if(m_pages.size()>m_numpages) //double check the pool size
+    	if(m_pageTable.size()>m_numpages) //double check the pool size
     		throw new DbException("BufferPool: over the limit");
     	
-    	m_mru = pid; //update the most recently used page
-    	m_lru = m_pages.get(0).getId();//update lru
     	return newPage;
     }
+    
+    /** @return a free arena frame for a page of the given size, or -1 to read onto the heap */
+    private int takeFrame(int bytes) {
+    	return m_arena==null || bytes!=m_arena.getFrameSize() ? -1 : m_arena.allocate();
+    }
+    
+    /** @return the size of the pages of the table pid belongs to */
+    private static int pageSize(PageId pid) {
+    	return Database.getCatalog().getDatabaseFile(pid.getTableId()).getPageSize();
+    }
+    
+    /** @return true if a page of the given size fits in the pool without evicting anything */
+    private boolean hasRoom(int bytes) {
+    	return m_pageTable.size()<m_numpages && m_bytes+bytes<=m_maxBytes;
+    }
+    
+    private void addPage(PageId pid, Page page, int bytes) {
+    	m_pageTable.put(pid, page);
+    	m_pageBytes.put(pid, bytes);
+    	m_bytes += bytes;
+    }
+    
+    /**
+     * Read the specified page, into the given arena frame unless frameNo is
+     * -1. The frame is released again if the read fails.
+     */
+    private Page readPage(PageId pid, int frameNo) {
+    	DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    	if(frameNo<0)
+    		return file.readPage(pid);
+    	try {
+    		return file.readPage(pid, m_arena.frame(frameNo));
+    	} catch(RuntimeException e) {
+    		m_arena.release(frameNo);
+    		throw e;
+    	}
+    }
+    
+    /** Record that the resident page pid views arena frame frameNo, if it does. */
+    private void adoptFrame(PageId pid, Page page, int frameNo) {
+    	if(frameNo<0)
+    		return;
+    	if(page instanceof FramedPage)
+    		m_frames.put(pid, frameNo);
+    	else
+    		m_arena.release(frameNo); //the file copied the data elsewhere
+    }
+    
+    /**
+     * @return true if the specified page is resident or being read ahead
+     */
+    public synchronized boolean isCachedOrLoading(PageId pid) {
+    	return m_pageTable.containsKey(pid) || m_loading.containsKey(pid);
+    }
+    
+    /**
+     * @return true if the specified page is being read ahead
+     */
+    public synchronized boolean isLoading(PageId pid) {
+    	return m_loading.containsKey(pid);
+    }
+    
+    /**
+     * Read the specified page into the pool without locking it, on behalf of
+     * a {@link ReadAhead}. The read happens outside the pool's monitor, and a
+     * concurrent getPage for the page waits for it instead of reading the page
+     * again. The page only takes a frame that is free, belongs to the scan's
+     * ring, or holds a clean page; read-ahead never causes a write and is
+     * dropped when no such frame exists.
+     *
+     * @param ring the ring of the scan reading ahead, or null
+     * @return true if the page was added to the pool
+     */
+    public boolean prefetchPage(PageId pid, ScanRing ring) {
+    	synchronized(this) {
+    		if(m_pageTable.containsKey(pid) || m_loading.containsKey(pid))
+    			return false;
+    		m_loading.put(pid, Boolean.TRUE);
+    	}
+    	
+    	int bytes = pageSize(pid);
+    	int frameNo = takeFrame(bytes);
+    	Page page;
+    	try {
+    		page = readPage(pid, frameNo);
+    	} catch(RuntimeException e) {
+    		page = null; //the table went away or shrank; read-ahead is only a hint
+    		frameNo = -1; //released by readPage
+    	}
+    	
+    	synchronized(this) {
+    		boolean valid = m_loading.remove(pid);
+    		notifyAll();
+    		if(page==null || !valid || m_pageTable.containsKey(pid) || !freePrefetchFrame(ring, bytes)) {
+    			if(frameNo>=0)
+    				m_arena.release(frameNo); //nobody has seen the page
+    			return false;
+    		}
+    		addPage(pid, page, bytes);
+    		adoptFrame(pid, page, frameNo);
+    		m_policy.pageAdded(pid);
+    		if(ring!=null) {
+    			ring.add(pid);
+    			m_ringPages.add(pid);
+    		}
+    		return true;
+    	}
+    }
+    
+    /** Make room for a read-ahead page of the given size without writing anything. */
+    private boolean freePrefetchFrame(ScanRing ring, int bytes) {
+    	while(!hasRoom(bytes)) {
+    		if(ring!=null && recycleRingFrame(ring))
+    			continue;
+    		PageId victim = m_policy.chooseVictim(m_cleanOnly);
+    		if(victim==null)
+    			return false;
+    		discardPage(victim);
+    	}
+    	return true;
+    }
+    
+    /**
+     * Drop the page occupying the ring slot that the scan is about to reuse.
+     * Pages that someone else has requested since the scan read them, or
+     * that have been dirtied, are left to the eviction policy.
+     *
+     * @return true if a frame was freed
+     */
+    private boolean recycleRingFrame(ScanRing ring) {
+    	PageId old = ring.nextToRecycle();
+    	if(old==null || !m_ringPages.remove(old))
+    		return false;
+    	Page oldPage = m_pageTable.get(old);
+    	if(oldPage==null || oldPage.isDirty()!=null)
+    		return false;
+    	discardPage(old);
+    	return true;
+    }
 
     /**
      * Releases the lock on a page.
@@ -149,6 +408,7 @@ public class BufferPool {
     public  void releasePage(TransactionId tid, PageId pid) {
         // some code goes here
         // not necessary for lab1|lab2
+    	m_lockManager.release(tid, pid);
     }
 
     /**
@@ -159,13 +419,14 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+    	transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
         // not necessary for lab1|lab2
-        return false;
+        return m_lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -179,6 +440,41 @@ public class BufferPool {
         throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+    	synchronized(this) {
+    		if(commit) {
+    			flushPages(tid);
+    			//what tid wrote is the committed state now
+    			for(PageId pid: m_lockManager.getLockedPages(tid)) {
+    				Page p = m_pageTable.get(pid);
+    				if(p!=null && m_lockManager.holdsExclusive(tid, pid))
+    					p.setBeforeImage();
+    			}
+    			m_stolen.remove(tid);
+    		} else {
+    			rollback(tid);
+    		}
+    	}
+    	m_lockManager.releaseAll(tid);
+    }
+    
+    /**
+     * Undo the changes of an aborting transaction: cached pages it dirtied are
+     * dropped so they are re-read from disk, and pages that were written to
+     * disk before it finished get their before images written back.
+     */
+    private void rollback(TransactionId tid) throws IOException {
+    	for(PageId pid: m_lockManager.getLockedPages(tid)) {
+    		Page p = m_pageTable.get(pid);
+    		if(p!=null && p.isDirty()!=null && p.isDirty().equals(tid))
+    			discardPage(pid);
+    	}
+    	HashMap<PageId, Page> stolen = m_stolen.remove(tid);
+    	if(stolen!=null) {
+    		for(Page before: stolen.values()) {
+    			discardPage(before.getId());
+    			Database.getCatalog().getDatabaseFile(before.getId().getTableId()).writePage(before);
+    		}
+    	}
     }
 
     /**
@@ -231,9 +527,7 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-    	for(Page p: m_pages) { //iterate through the list of pages
-    		flushPage(p.getId());
-    	}
+    	flushPages(new ArrayList<PageId>(m_pageTable.keySet()), true);
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -244,6 +538,19 @@ public class BufferPool {
     public synchronized void discardPage(PageId pid) {
         // some code goes here
         // only necessary for lab5
+    	Page page = m_pageTable.remove(pid);
+    	if(page!=null) {
+    		m_bytes -= m_pageBytes.remove(pid);
+    		m_policy.pageRemoved(pid);
+    		m_ringPages.remove(pid);
+    		Integer frameNo = m_frames.remove(pid);
+    		if(frameNo!=null) {
+    			((FramedPage)page).detach(); //whoever still holds the page keeps a private copy
+    			m_arena.release(frameNo);
+    		}
+    	}
+    	if(m_loading.containsKey(pid))
+    		m_loading.put(pid, Boolean.FALSE); //the disk copy is about to change under the read
     }
 
     /**
@@ -253,19 +560,117 @@ public class BufferPool {
     private synchronized  void flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
-    	Page targetPg = findPage(pid);
-    	if(targetPg==null)
-    		throw new IOException("flush: page not in buffer pool");
-    	
-    	//check if the page is not dirty
-    	TransactionId targetTid = targetPg.isDirty();
-    	if(targetTid==null) {
+    	ArrayList<PageId> pids = new ArrayList<PageId>(1);
+    	pids.add(pid);
+    	flushPages(pids, true);
+    }
+    
+    /**
+     * Write the dirty pages among pids to disk, following write-ahead
+     * logging: an UPDATE record for every page is appended and the log is
+     * forced once per batch, before any of the batch's pages is written.
+     * <p>
+     * Each page's monitor serves as its latch; code modifying a resident page
+     * holds it, so a page cannot change between being logged and written.
+     *
+     * @param steal true unless the transactions that dirtied the pages are
+     *   committing; an uncommitted page written to disk has its before image
+     *   remembered so an abort can put it back
+     */
+    private synchronized void flushPages(Collection<PageId> pids, boolean steal) throws IOException {
+    	ArrayList<Page> dirty = new ArrayList<Page>();
+    	for(PageId pid: pids) {
+    		Page p = m_pageTable.get(pid);
+    		if(p==null)
+    			throw new IOException("flush: page not in buffer pool");
+    		if(p.isDirty()!=null)
+    			dirty.add(p);
+    	}
+    	for(int i=0; i<dirty.size(); i+=WAL_BATCH) {
+    		List<Page> batch = dirty.subList(i, Math.min(dirty.size(), i+WAL_BATCH));
+    		latchAndFlush(batch, 0, steal);
+    	}
+    }
+    
+    /** Latch batch[i..] one page at a time, then log and write the whole batch. */
+    private void latchAndFlush(List<Page> batch, int i, boolean steal) throws IOException {
+    	if(i<batch.size()) {
+    		synchronized(batch.get(i)) {
+    			latchAndFlush(batch, i+1, steal);
+    		}
     		return;
-    	} else { // the page is dirty
-    		Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(targetPg);
-    		targetPg.markDirty(false, targetTid);
     	}
     	
+    	LogFile log = Database.getLogFile();
+    	for(Page p: batch) {
+    		log.logWrite(p.isDirty(), p.getBeforeImage(), p);
+    	}
+    	log.force();
+    	
+    	for(Page p: batch) {
+    		TransactionId tid = p.isDirty();
+    		if(steal)
+    			rememberBeforeImage(tid, p);
+    		Database.getCatalog().getDatabaseFile(p.getId().getTableId()).writePage(p);
+    		p.markDirty(false, tid);
+    	}
+    }
+    
+    /**
+     * Record that tid wrote page directly to disk, bypassing the pool, as
+     * {@link DbFile#bulkInsert} does; if tid aborts, before is written back.
+     *
+     * @param before the image of the page before tid wrote it
+     */
+    public synchronized void pageWrittenDirectly(TransactionId tid, Page before) {
+    	rememberBeforeImage(tid, before);
+    }
+    
+    private void rememberBeforeImage(TransactionId tid, Page p) {
+    	HashMap<PageId, Page> stolen = m_stolen.get(tid);
+    	if(stolen==null) {
+    		stolen = new HashMap<PageId, Page>();
+    		m_stolen.put(tid, stolen);
+    	}
+    	if(!stolen.containsKey(p.getId())) //keep the oldest image
+    		stolen.put(p.getId(), p.getBeforeImage());
+    }
+    
+    /**
+     * @return the number of resident pages that are dirty
+     */
+    public synchronized int getDirtyPageCount() {
+    	int count = 0;
+    	for(Page p: m_pageTable.values()) {
+    		if(p.isDirty()!=null)
+    			count++;
+    	}
+    	return count;
+    }
+    
+    /**
+     * Write dirty pages out ahead of eviction until no more than
+     * lowWatermark dirty pages remain, writing at most maxPages pages.
+     * Called by the {@link BackgroundWriter}; pages the eviction policy
+     * would give up first are written first.
+     *
+     * @return the number of pages written
+     */
+    public synchronized int writeBehind(int lowWatermark, int maxPages) throws IOException {
+    	int excess = getDirtyPageCount() - lowWatermark;
+    	if(excess<=0)
+    		return 0;
+    	int limit = Math.min(excess, maxPages);
+    	//walk the pages in eviction order without disturbing it, collecting dirty ones
+    	LinkedHashSet<PageId> batch = new LinkedHashSet<PageId>();
+    	for(PageId pid: m_policy.victimOrder()) {
+    		if(batch.size()>=limit)
+    			break;
+    		if(m_pageTable.get(pid).isDirty()!=null)
+    			batch.add(pid);
+    	}
+    	flushPages(batch, true);
+    	return batch.size();
     }
 
     /** Write all pages of the specified transaction to disk.
@@ -273,7 +678,13 @@ public class BufferPool {
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-    	
+    	ArrayList<PageId> pids = new ArrayList<PageId>();
+    	for(PageId pid: m_lockManager.getLockedPages(tid)) {
+    		Page p = m_pageTable.get(pid);
+    		if(p!=null && p.isDirty()!=null && p.isDirty().equals(tid))
+    			pids.add(pid);
+    	}
+    	flushPages(pids, false);
     }
 
     /**
@@ -284,25 +695,21 @@ public class BufferPool {
         // some code goes here
         // not necessary for lab1
     	
-    	PageId policy = m_lru; //choose between m_lru and m_mru
+    	//a clean victim can be dropped without a synchronous write; a policy
+    	//that finds none leaves its bookkeeping as it was (see chooseVictim)
+    	PageId policy = m_policy.chooseVictim(m_cleanOnly);
+    	if(policy==null)
+    		policy = m_policy.chooseVictim(m_anyPage);
+    	if(policy==null)
+    		throw new DbException("BP: no page to evict");
     	
-    	if(policy!=null) {
-    		try {
-    			flushPage(policy);
-    		} catch(IOException e) {
-    			System.err.println("IOException in evictPage");
-    			System.exit(1);
-    		}
+    	try {
+    		flushPage(policy);
+    	} catch(IOException e) {
+    		throw new DbException("BP: could not flush " + policy + " on eviction");
     	}
-    	else
-    		throw new DbException("BP: mru does not exist");
-    	
-    	Page targetPg = findPage(policy);
-    	if(targetPg==null)
-    		throw new DbException("BP: mru wrong page");
     	
-    	if(!m_pages.remove(targetPg))
-    		throw new DbException("BP: mru can't remove");
+    	discardPage(policy);
     }
 
 }
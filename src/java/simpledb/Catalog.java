@@ -14,31 +14,46 @@ import java.util.concurrent.ConcurrentHashMap;
  * For now, this is a stub catalog that must be populated with tables by a
  * user program before it can be used -- eventually, this should be converted
  * to a catalog that reads a catalog table from disk.
+ * <p>
+ * Tables are looked up on every buffer pool miss, so lookups take no lock:
+ * the tables are kept in hash maps by id and by name that are never changed
+ * once published. Adding tables copies the maps and publishes the copy.
  * 
  * @Threadsafe
  */
 public class Catalog {
 	
-	private ArrayList<Integer> m_tableIDs;
-	private ArrayList<Table> m_tables;
+	private volatile Snapshot m_snapshot; //replaced, never changed, by the synchronized writers
 
  
     private static class Table {
-        public DbFile dbfile;
-        public String name;
-        public String pkey;
+        public final DbFile dbfile;
+        public final int id; //dbfile.getId(), which may be costly to compute
+        public final String name;
+        public final String pkey;
         
         public Table(DbFile dbf, String nm, String pk) {
         	dbfile = dbf;
+        	id = dbf.getId();
         	name = nm;
         	pkey = pk;
         }
     }	
+    
+    /** The tables of the catalog at some point in time. */
+    private static class Snapshot {
+        public final LinkedHashMap<Integer, Table> byId; //in the order the tables were added
+        public final HashMap<String, Table> byName;
+        
+        public Snapshot(LinkedHashMap<Integer, Table> id, HashMap<String, Table> nm) {
+        	byId = id;
+        	byName = nm;
+        }
+    }
 	
     public Catalog() {
         // some code goes here
-    	m_tableIDs = new ArrayList<Integer>();
-    	m_tables = new ArrayList<Table>();
+    	m_snapshot = new Snapshot(new LinkedHashMap<Integer, Table>(), new HashMap<String, Table>());
     }
 
     /**
@@ -52,31 +67,29 @@ public class Catalog {
      */
     public void addTable(DbFile file, String name, String pkeyField) {
         // some code goes here
-    	//m_tableIDs.add(file.getId());
-    	
-    	System.out.println("add table name:"+name);
-    	
-    	Table newTable = new Table(file, name, pkeyField);
-    	
-    	for(int i=0; i<m_tables.size(); i++) { //search for the given table name
-    		Table currTable = m_tables.get(i);
-    		if(currTable.name.equals(name)) { //found it!
-    			currTable.dbfile = file;
-    			currTable.pkey = pkeyField;
-    			m_tableIDs.set(i,  new Integer(file.getId())); //replace the corresponding entry in the table ID list
-    			return;
-    		}
-    		else if(m_tableIDs.get(i).equals(new Integer(file.getId()))) { //same id found
-    			currTable.dbfile = file;
-    			currTable.pkey = pkeyField;
-    			currTable.name = name;
-    			return;
-    		}
+    	addTables(Collections.singletonList(new Table(file, name, pkeyField)));
+    }
+    
+    /**
+     * Add the given tables in order with a single copy of the maps. A table
+     * replaces any earlier table of the same name or id.
+     */
+    private synchronized void addTables(List<Table> tables) {
+    	Snapshot old = m_snapshot;
+    	LinkedHashMap<Integer, Table> byId = new LinkedHashMap<Integer, Table>(old.byId);
+    	HashMap<String, Table> byName = new HashMap<String, Table>(old.byName);
+    	for(Table t: tables) {
+    		System.out.println("add table name:"+t.name);
+    		Table sameName = byName.remove(t.name);
+    		if(sameName!=null)
+    			byId.remove(sameName.id);
+    		Table sameId = byId.remove(t.id);
+    		if(sameId!=null)
+    			byName.remove(sameId.name);
+    		byId.put(t.id, t);
+    		byName.put(t.name, t);
     	}
-    	
-    	//if it doesn't exist, add to the end
-    	m_tableIDs.add(new Integer(file.getId()));
-    	m_tables.add(newTable);
+    	m_snapshot = new Snapshot(byId, byName);
     }
 
     public void addTable(DbFile file, String name) {
@@ -96,7 +109,13 @@ public class Catalog {
         addTable(file, (UUID.randomUUID()).toString());
     }
     
-    
+    /** @return the table with the given id */
+    private Table table(int tableid) throws NoSuchElementException {
+    	Table t = m_snapshot.byId.get(tableid);
+    	if(t==null)
+    		throw new NoSuchElementException();
+    	return t;
+    }
 
     /**
      * Return the id of the table with a specified name,
@@ -104,13 +123,10 @@ public class Catalog {
      */
     public int getTableId(String name) throws NoSuchElementException {
         // some code goes here
-    	for(int i=0; i<m_tables.size(); i++) { //iterate through the array list of tables
-    		Table currTable = m_tables.get(i);
-    		if(currTable.name.equals(name)) { //found it!
-    			return currTable.dbfile.getId();
-    		}
-    	}
-        throw new NoSuchElementException();
+    	Table t = m_snapshot.byName.get(name);
+    	if(t==null)
+    		throw new NoSuchElementException();
+    	return t.id;
     }
 
     /**
@@ -121,15 +137,7 @@ public class Catalog {
      */
     public TupleDesc getTupleDesc(int tableid) throws NoSuchElementException {
         // some code goes here
-    	for(int i=0; i<m_tables.size(); i++) { //search using the tableID list
-    		//if(m_tableIDs.get(i).intValue()==tableid) {
-    		//	return m_tables.get(i).dbfile.getTupleDesc(); //access ith table in the table list
-    		//}
-    		if(m_tables.get(i).dbfile.getId()==tableid) {
-    			return m_tables.get(i).dbfile.getTupleDesc();
-    		}
-    	}
-    	throw new NoSuchElementException();
+    	return table(tableid).dbfile.getTupleDesc();
     }
 
     /**
@@ -139,50 +147,34 @@ public class Catalog {
      *     function passed to addTable
      */
     public DbFile getDatabaseFile(int tableid) throws NoSuchElementException {
-    	for(int i=0; i<m_tables.size(); i++) { //search using the tableID list
-    		//if(m_tableIDs.get(i).intValue()==tableid) {
-    		//	return m_tables.get(i).dbfile; //access ith table in the table list
-    		//}
-    		
-    		if(m_tables.get(i).dbfile.getId()==tableid) {
-    			return m_tables.get(i).dbfile;
-    		}
-    	}
-    	throw new NoSuchElementException();
+    	return table(tableid).dbfile;
     }
 
     public String getPrimaryKey(int tableid) {
         // some code goes here
-    	for(int i=0; i<m_tableIDs.size(); i++) { //search using the tableID list
-    		if(m_tableIDs.get(i).intValue()==tableid) {
-    			return m_tables.get(i).pkey;
-    		}
-    	}
-    	
-    	//if no table with the tableid exists
-    	return null;
+    	Table t = m_snapshot.byId.get(tableid);
+    	return t==null ? null : t.pkey; //null if no table with the tableid exists
     }
 
+    /**
+     * @return the ids of the tables, in the order they were added, as of
+     *   the call
+     */
     public Iterator<Integer> tableIdIterator() {
         // some code goes here
-    	return m_tableIDs.iterator();
+    	return Collections.unmodifiableSet(m_snapshot.byId.keySet()).iterator();
     }
 
     public String getTableName(int id) {
         // some code goes here
-    	for(int i=0; i<m_tables.size(); i++) { //search using the tableID list
-    		if(m_tables.get(i).dbfile.getId()==id) {
-    			return m_tables.get(i).name;
-    		}
-    	}
-    	return null;
+    	Table t = m_snapshot.byId.get(id);
+    	return t==null ? null : t.name;
     }
     
     /** Delete all tables from the catalog */
-    public void clear() {
+    public synchronized void clear() {
         // some code goes here
-    	m_tables = new ArrayList<Table>();
-    	m_tableIDs = new ArrayList<Integer>();
+    	m_snapshot = new Snapshot(new LinkedHashMap<Integer, Table>(), new HashMap<String, Table>());
     }
     
     /**
@@ -192,6 +184,7 @@ public class Catalog {
     public void loadSchema(String catalogFile) {
         String line = "";
         String baseFolder=new File(new File(catalogFile).getAbsolutePath()).getParent();
+        ArrayList<Table> loaded = new ArrayList<Table>(); //added together at the end, with one copy of the maps
         try {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
@@ -227,10 +220,77 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
-                addTable(tabHf,name,primaryKey);
+                //storage options may follow the field list, e.g. name (f int) mmap slotted pagesize=16384
+                boolean mapped = false;
+                boolean compressed = false;
+                boolean columnar = false;
+                boolean segmented = false;
+                int pageSize = BufferPool.getPageSize();
+                PageFormat format = PageFormat.FIXED;
+                for (String o : line.substring(line.indexOf(")") + 1).trim().split("\\s+")) {
+                    if (o.length() == 0)
+                        continue;
+                    if (o.toLowerCase().equals("mmap"))
+                        mapped = true;
+                    else if (o.toLowerCase().equals("compressed"))
+                        compressed = true;
+                    else if (o.toLowerCase().equals("columnar"))
+                        columnar = true;
+                    else if (o.toLowerCase().equals("segmented"))
+                        segmented = true;
+                    else if (o.toLowerCase().startsWith("pagesize=")) {
+                        try {
+                            pageSize = Integer.parseInt(o.substring("pagesize=".length()));
+                        } catch (NumberFormatException e) {
+                            pageSize = -1;
+                        }
+                        if (pageSize < 512 || pageSize > (1 << 20) || Integer.bitCount(pageSize) != 1) {
+                            System.out.println("Page size must be a power of two from 512 to 1048576: " + o);
+                            System.exit(0);
+                        }
+                    }
+                    else if (PageFormat.forName(o) != null)
+                        format = PageFormat.forName(o);
+                    else {
+                        System.out.println("Unknown option " + o);
+                        System.exit(0);
+                    }
+                }
+                if (pageSize > format.getMaxPageSize()) {
+                    System.out.println(format + " pages can be at most " + format.getMaxPageSize() + " bytes: " + name);
+                    System.exit(0);
+                }
+                if (mapped && compressed) {
+                    System.out.println("Compressed tables cannot be memory-mapped: " + name);
+                    System.exit(0);
+                }
+                if (segmented && (mapped || compressed)) {
+                    System.out.println("Segmented tables cannot be memory-mapped or compressed: " + name);
+                    System.exit(0);
+                }
+                if (columnar && (mapped || compressed || segmented || format != PageFormat.FIXED)) {
+                    System.out.println("Columnar tables take no other storage options: " + name);
+                    System.exit(0);
+                }
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                if (compressed && CompressedHeapFile.isRaw(tabFile)) {
+                    System.out.println("Table " + name + " holds raw pages; run 'compress " + tabFile + "' first");
+                    System.exit(0);
+                }
+                DbFile tabHf;
+                if (columnar)
+                    tabHf = new ColumnFile(tabFile, t, pageSize);
+                else if (compressed)
+                    tabHf = new CompressedHeapFile(tabFile, t, format, pageSize);
+                else if (segmented)
+                    tabHf = new SegmentedHeapFile(tabFile, t, format, pageSize,
+                            SegmentedHeapFile.DEFAULT_SEGMENT_BYTES / pageSize);
+                else
+                    tabHf = new HeapFile(tabFile, t, mapped, format, pageSize);
+                loaded.add(new Table(tabHf,name,primaryKey));
                 System.out.println("Added table : " + name + " with schema " + t);
             }
+            addTables(loaded);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
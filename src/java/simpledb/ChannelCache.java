@@ -0,0 +1,153 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * ChannelCache bounds the number of files the database keeps open. Table
+ * files and their side files are opened through a {@link Handle}, which
+ * opens the file on first use rather than when the table is loaded, and
+ * the cache closes the least recently used channels once more than its
+ * limit are open. A closed channel is reopened by the next use of its
+ * handle.
+ * <p>
+ * A channel is borrowed with {@link Handle#acquire} and given back with
+ * {@link Handle#release}; the cache never closes a borrowed channel, so
+ * the limit is exceeded for as long as every open channel is borrowed.
+ *
+ * @Threadsafe
+ */
+public class ChannelCache {
+
+    /** Default number of files kept open. */
+    public static final int DEFAULT_MAX_OPEN = 256;
+
+    private final int m_maxOpen;
+    private final LinkedHashMap<Handle, Handle> m_open; //handles with an open channel, least recently used first
+
+    /**
+     * Create a cache that keeps at most maxOpen files open.
+     */
+    public ChannelCache(int maxOpen) {
+        if (maxOpen <= 0)
+            throw new IllegalArgumentException("bad number of open files " + maxOpen);
+        m_maxOpen = maxOpen;
+        m_open = new LinkedHashMap<Handle, Handle>(16, 0.75f, true);
+    }
+
+    /** @return the number of files this cache keeps open */
+    public int getMaxOpen() {
+        return m_maxOpen;
+    }
+
+    /** @return the number of files open right now */
+    public synchronized int getNumOpen() {
+        return m_open.size();
+    }
+
+    /**
+     * Return a handle on f, which is opened for reading and writing, and
+     * created if it does not exist, when the handle is first used.
+     */
+    public Handle open(File f) {
+        return new Handle(f);
+    }
+
+    /**
+     * Close every channel that is not borrowed. The handles stay usable.
+     */
+    public synchronized void closeAll() {
+        Iterator<Handle> it = m_open.keySet().iterator();
+        while (it.hasNext()) {
+            Handle h = it.next();
+            if (h.m_pins == 0) {
+                it.remove();
+                h.closeChannel();
+            }
+        }
+    }
+
+    /** Close the least recently used channels that are not borrowed until at most m_maxOpen are open. */
+    private void evict() {
+        Iterator<Handle> it = m_open.keySet().iterator();
+        while (m_open.size() > m_maxOpen && it.hasNext()) {
+            Handle h = it.next();
+            if (h.m_pins == 0) {
+                it.remove();
+                h.closeChannel();
+            }
+        }
+    }
+
+    /**
+     * A file opened through the cache. Its channel and pin count are
+     * guarded by the cache.
+     */
+    public class Handle {
+        private final File m_file;
+        private FileChannel m_fc; //null while closed
+        private int m_pins; //borrowers of m_fc
+
+        private Handle(File f) {
+            m_file = f;
+        }
+
+        /** @return the file of this handle */
+        public File getFile() {
+            return m_file;
+        }
+
+        /**
+         * Borrow the channel of the file, opening it if it is closed. Every
+         * call must be matched by a call to {@link #release}, after which
+         * the channel must not be used.
+         */
+        public FileChannel acquire() throws IOException {
+            synchronized (ChannelCache.this) {
+                if (m_fc == null || !m_fc.isOpen()) { //closed by the cache, or by an interrupt
+                    m_fc = new RandomAccessFile(m_file, "rw").getChannel();
+                    m_pins++;
+                    m_open.put(this, this);
+                    evict();
+                } else {
+                    m_pins++;
+                    m_open.get(this); //most recently used now
+                }
+                return m_fc;
+            }
+        }
+
+        /** Give back the channel borrowed by {@link #acquire}. */
+        public void release() {
+            synchronized (ChannelCache.this) {
+                m_pins--;
+                if (m_pins == 0 && m_open.size() > m_maxOpen)
+                    evict();
+            }
+        }
+
+        /** Close the channel of the file now, unless it is borrowed. */
+        public void close() {
+            synchronized (ChannelCache.this) {
+                if (m_fc != null && m_pins == 0) {
+                    m_open.remove(this);
+                    closeChannel();
+                }
+            }
+        }
+
+        private void closeChannel() {
+            FileChannel fc = m_fc;
+            m_fc = null;
+            try {
+                fc.close();
+            } catch (IOException e) {
+                //the channel is gone either way; what was written through it is in the file
+            }
+        }
+    }
+}
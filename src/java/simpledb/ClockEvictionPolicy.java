@@ -0,0 +1,114 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * CLOCK (second chance) replacement. Each frame carries a reference bit that
+ * is set on access; the clock hand sweeps the frames, clearing set bits and
+ * stopping at the first frame whose bit is already clear.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private PageId[] m_slots;
+    private boolean[] m_referenced;
+    private HashMap<PageId, Integer> m_slotOf;
+    private LinkedList<Integer> m_freeSlots;
+    private int m_hand;
+
+    public ClockEvictionPolicy(int numPages) {
+        m_slots = new PageId[numPages];
+        m_referenced = new boolean[numPages];
+        m_slotOf = new HashMap<PageId, Integer>();
+        m_freeSlots = new LinkedList<Integer>();
+        for (int i = 0; i < numPages; i++)
+            m_freeSlots.add(i);
+        m_hand = 0;
+    }
+
+    public void pageAdded(PageId pid) {
+        if (m_freeSlots.isEmpty())
+            grow();
+        int slot = m_freeSlots.removeFirst();
+        m_slots[slot] = pid;
+        m_referenced[slot] = true;
+        m_slotOf.put(pid, slot);
+    }
+
+    public void pageAccessed(PageId pid) {
+        Integer slot = m_slotOf.get(pid);
+        if (slot != null)
+            m_referenced[slot] = true;
+    }
+
+    public void pageRemoved(PageId pid) {
+        Integer slot = m_slotOf.remove(pid);
+        if (slot == null)
+            return;
+        m_slots[slot] = null;
+        m_referenced[slot] = false;
+        m_freeSlots.addFirst(slot);
+    }
+
+    /**
+     * A sweep that finds no victim leaves the hand and the reference bits as
+     * they were, so the caller can retry with a wider filter and the pages
+     * it passed still get their second chance.
+     */
+    public PageId chooseVictim(VictimFilter filter) {
+        int start = m_hand;
+        ArrayList<Integer> cleared = new ArrayList<Integer>();
+        // two full sweeps: the first may only be clearing reference bits
+        for (int i = 0; i < 2 * m_slots.length; i++) {
+            int slot = m_hand;
+            m_hand = (m_hand + 1) % m_slots.length;
+            PageId pid = m_slots[slot];
+            if (pid == null)
+                continue;
+            if (m_referenced[slot]) {
+                m_referenced[slot] = false;
+                cleared.add(slot);
+                continue;
+            }
+            if (filter.accept(pid))
+                return pid;
+        }
+        m_hand = start;
+        for (int slot : cleared)
+            m_referenced[slot] = true;
+        return null;
+    }
+
+    /**
+     * The order in which sweeps from the current hand would reach the
+     * pages: those whose bit is clear, then those whose bit the first sweep
+     * would clear.
+     */
+    public List<PageId> victimOrder() {
+        ArrayList<PageId> order = new ArrayList<PageId>(m_slotOf.size());
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < m_slots.length; i++) {
+                int slot = (m_hand + i) % m_slots.length;
+                if (m_slots[slot] != null && m_referenced[slot] == (pass == 1))
+                    order.add(m_slots[slot]);
+            }
+        }
+        return order;
+    }
+
+    /** Only needed if the pool ever holds more pages than it was sized for. */
+    private void grow() {
+        int oldLen = m_slots.length;
+        int newLen = Math.max(1, oldLen * 2);
+        PageId[] slots = new PageId[newLen];
+        boolean[] referenced = new boolean[newLen];
+        System.arraycopy(m_slots, 0, slots, 0, oldLen);
+        System.arraycopy(m_referenced, 0, referenced, 0, oldLen);
+        m_slots = slots;
+        m_referenced = referenced;
+        for (int i = oldLen; i < newLen; i++)
+            m_freeSlots.add(i);
+    }
+}
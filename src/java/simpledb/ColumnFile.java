@@ -0,0 +1,302 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A DbFile that stores a table column by column. Each column lives in its
+ * own segment file next to the table file, named after it with ".c" and the
+ * column's index appended, as a sequence of {@link ColumnPage}s. A scan
+ * that needs only some of the columns reads only their segments, see
+ * {@link ColumnScan}.
+ * <p>
+ * Rows are numbered from 0 in insertion order, and the pages of every
+ * column hold consecutive runs of rows. A hidden int column after the
+ * table's fields, numbered {@code td.numFields()}, holds a deletion flag
+ * per row: deleting a tuple sets its flag instead of removing its values.
+ * A tuple's RecordId names the page of the deletion flags holding its row,
+ * and the row number.
+ * <p>
+ * Tuples are only ever appended. Appenders serialize on an exclusive lock
+ * on the last page of the deletion flags, and then add the tuple's values
+ * to the last page of every column, starting a new page when a column's
+ * last page is full. The table file itself stays empty; it names the table
+ * and gives it its id.
+ *
+ * @see ColumnPage
+ */
+public class ColumnFile implements DbFile {
+
+    private final File m_file;
+    private final TupleDesc m_td;
+    private final int m_pageSize; //bytes per page
+    private final ChannelCache.Handle[] m_segments; //one per column, then the deletion flags
+    private final Object m_appendLock = new Object(); //serializes growing the segments
+
+    /**
+     * Constructs a column file for the table named by f, opening or
+     * creating the segment files of its columns.
+     *
+     * @param f the table file, next to which the segments are stored
+     * @param pageSize bytes per page
+     */
+    public ColumnFile(File f, TupleDesc td, int pageSize) {
+        if (pageSize <= ColumnPage.HEADER_SIZE + 2 + Type.STRING_LEN)
+            throw new IllegalArgumentException("bad page size " + pageSize);
+        m_file = f;
+        m_td = td;
+        m_pageSize = pageSize;
+        m_segments = new ChannelCache.Handle[td.numFields() + 1];
+        try {
+            new RandomAccessFile(f, "rw").close();
+            for (int i = 0; i < m_segments.length; i++) {
+                m_segments[i] = Database.getChannelCache().open(segmentFile(f, i));
+                if (segmentFile(f, i).length() == 0)
+                    allocatePage(i); //every column has a last page to append to
+            }
+        } catch (IOException e) {
+            System.err.println("error opening the column segments of " + f);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Constructs a column file of pages of the default size.
+     *
+     * @param f the table file, next to which the segments are stored
+     */
+    public ColumnFile(File f, TupleDesc td) {
+        this(f, td, BufferPool.getPageSize());
+    }
+
+    /** @return the segment file of the given column of the table stored in f */
+    public static File segmentFile(File f, int column) {
+        return new File(f.getPath() + ".c" + column);
+    }
+
+    /**
+     * Returns the table file of this ColumnFile.
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return m_file.getAbsoluteFile().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return m_td;
+    }
+
+    // see DbFile.java for javadocs
+    public int getPageSize() {
+        return m_pageSize;
+    }
+
+    /** @return the column holding the deletion flags of the rows */
+    public int deletedColumn() {
+        return m_td.numFields();
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) throws IllegalArgumentException {
+        ColumnPageId cpid = (ColumnPageId) pid;
+        int column = cpid.getColumn();
+        if (column < 0 || column >= m_segments.length || cpid.pageNumber() < 0
+                || cpid.pageNumber() >= numPages(column))
+            throw new IllegalArgumentException("no page " + pid + " in " + m_file);
+        ByteBuffer data = ByteBuffer.allocate(m_pageSize);
+        try {
+            long offset = (long) cpid.pageNumber() * m_pageSize;
+            FileChannel fc = m_segments[column].acquire();
+            try {
+                while (data.hasRemaining() && fc.read(data, offset + data.position()) >= 0) {
+                }
+            } finally {
+                m_segments[column].release();
+            }
+            return new ColumnPage(cpid, data.array());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("error reading " + pid + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Column pages keep their values decoded, so the frame is not used.
+     *
+     * @see DbFile#readPage(PageId, ByteBuffer)
+     */
+    public Page readPage(PageId pid, ByteBuffer frame) throws IllegalArgumentException {
+        return readPage(pid);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId pid = (ColumnPageId) page.getId();
+        ByteBuffer data = ByteBuffer.wrap(page.getPageData());
+        write(pid.getColumn(), (long) pid.pageNumber() * m_pageSize, data);
+    }
+
+    /** Write data to the segment of the given column at offset. */
+    private void write(int column, long offset, ByteBuffer data) throws IOException {
+        FileChannel fc = m_segments[column].acquire();
+        try {
+            while (data.hasRemaining())
+                fc.write(data, offset + data.position());
+        } finally {
+            m_segments[column].release();
+        }
+    }
+
+    /**
+     * Returns the number of pages of all the columns, which is what a full
+     * scan reads.
+     */
+    public int numPages() {
+        int n = 0;
+        for (int i = 0; i < m_segments.length; i++)
+            n += numPages(i);
+        return n;
+    }
+
+    /** Returns the number of pages in the segment of the given column. */
+    public int numPages(int column) {
+        try {
+            FileChannel fc = m_segments[column].acquire();
+            try {
+                return (int) (fc.size() / m_pageSize);
+            } finally {
+                m_segments[column].release();
+            }
+        } catch (IOException e) {
+            System.err.println("error counting the number of pages");
+            System.exit(1);
+        }
+        return 0;
+    }
+
+    /** Add an empty page at the end of the segment of the given column. */
+    private ColumnPageId allocatePage(int column) throws IOException {
+        synchronized (m_appendLock) {
+            int pgNo = numPages(column);
+            write(column, (long) pgNo * m_pageSize, ByteBuffer.allocate(m_pageSize));
+            return new ColumnPageId(getId(), column, pgNo);
+        }
+    }
+
+    /**
+     * Lock the last page of the deletion flags exclusively for tid, which
+     * makes tid the only appender of the table.
+     */
+    private ColumnPage lockTail(TransactionId tid) throws DbException, TransactionAbortedException {
+        BufferPool bp = Database.getBufferPool();
+        while (true) {
+            int n = numPages(deletedColumn());
+            ColumnPage tail = (ColumnPage) bp.getPage(tid, new ColumnPageId(getId(), deletedColumn(), n - 1),
+                    Permissions.READ_WRITE);
+            if (numPages(deletedColumn()) == n)
+                return tail;
+            //another appender added a page while we waited; its last page is the tail now
+        }
+    }
+
+    /**
+     * @return the number of the row after the last one of the table. Pages
+     *   emptied by aborted appends are skipped.
+     */
+    private int nextRow(TransactionId tid, ColumnPage tail) throws DbException, TransactionAbortedException {
+        ColumnPage p = tail;
+        while (p.getNumRows() == 0 && p.getId().pageNumber() > 0) {
+            p = (ColumnPage) Database.getBufferPool().getPage(tid,
+                    new ColumnPageId(getId(), deletedColumn(), p.getId().pageNumber() - 1), Permissions.READ_ONLY);
+        }
+        return p.getNumRows() == 0 ? 0 : p.getFirstRow() + p.getNumRows();
+    }
+
+    /** Append value f of the given row to the last page of column, adding a page if it is full. */
+    private ColumnPage append(TransactionId tid, int column, int row, Field f)
+            throws DbException, IOException, TransactionAbortedException {
+        BufferPool bp = Database.getBufferPool();
+        ColumnPage page = (ColumnPage) bp.getPage(tid,
+                new ColumnPageId(getId(), column, numPages(column) - 1), Permissions.READ_WRITE);
+        synchronized (page) { //page latch, see BufferPool.flushPages
+            if (page.append(row, f)) {
+                page.markDirty(true, tid);
+                return page;
+            }
+        }
+        page = (ColumnPage) bp.getPage(tid, allocatePage(column), Permissions.READ_WRITE);
+        synchronized (page) {
+            if (!page.append(row, f))
+                throw new DbException("value does not fit an empty page of " + m_file);
+            page.markDirty(true, tid);
+        }
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(m_td))
+            throw new DbException("ColumnFile: tuple desc mismatch");
+
+        ColumnPage tail = lockTail(tid);
+        int row = nextRow(tid, tail);
+        ArrayList<Page> result = new ArrayList<Page>();
+        for (int i = 0; i < m_td.numFields(); i++)
+            result.add(append(tid, i, row, t.getField(i)));
+        ColumnPage flags = append(tid, deletedColumn(), row, new IntField(0));
+        result.add(flags);
+        t.setRecordId(new RecordId(flags.getId(), row));
+        return result;
+    }
+
+    /**
+     * Column files have no separate load path; the tuples are appended one
+     * by one through the buffer pool, where the pages of each column fill up
+     * in turn.
+     *
+     * @see DbFile#bulkInsert
+     */
+    public int bulkInsert(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        int count = 0;
+        while (tuples.hasNext()) {
+            insertTuple(tid, tuples.next());
+            count++;
+        }
+        return count;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !(rid.getPageId() instanceof ColumnPageId) || rid.getPageId().getTableId() != getId())
+            throw new DbException(t + " is not a member of " + m_file);
+        ColumnPage flags = (ColumnPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_WRITE);
+        synchronized (flags) { //page latch, see BufferPool.flushPages
+            int i = rid.tupleno() - flags.getFirstRow();
+            if (i < 0 || i >= flags.getNumRows() || flags.getInt(i) != 0)
+                throw new DbException(t + " not used in the page");
+            flags.setInt(i, 1);
+            flags.markDirty(true, tid);
+        }
+        ArrayList<Page> result = new ArrayList<Page>();
+        result.add(flags);
+        return result;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        int[] columns = new int[m_td.numFields()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = i;
+        return new ColumnFileIterator(tid, this, columns, m_td);
+    }
+}
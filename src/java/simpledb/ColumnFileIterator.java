@@ -0,0 +1,124 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the rows of a {@link ColumnFile} that are not deleted,
+ * reading only the pages of the requested columns and of the deletion
+ * flags. The columns are walked in lockstep, one page of each at a time;
+ * empty pages, such as those left behind by aborted appends, are skipped.
+ */
+public class ColumnFileIterator implements DbFileIterator {
+
+    private final TransactionId m_tid;
+    private final ColumnFile m_file;
+    private final int[] m_columns; //columns of the file making up the output tuples
+    private final TupleDesc m_td; //of the output tuples
+
+    private Cursor m_flags; //null unless open
+    private Cursor[] m_cursors;
+    private int m_row; //row of the next tuple, valid if m_next
+    private boolean m_next;
+
+    /** Position in the pages of one column. */
+    private class Cursor {
+        final int m_column;
+        int m_pgNo = -1;
+        ColumnPage m_page;
+
+        Cursor(int column) {
+            m_column = column;
+        }
+
+        /**
+         * Move to the page holding row, which is not before the current
+         * one.
+         *
+         * @return false if no page of the column holds row
+         */
+        boolean seek(int row) throws DbException, TransactionAbortedException {
+            while (m_page == null || row >= m_page.getFirstRow() + m_page.getNumRows()) {
+                if (!nextPage())
+                    return false;
+            }
+            return row >= m_page.getFirstRow();
+        }
+
+        /** Move to the next page that has rows. */
+        boolean nextPage() throws DbException, TransactionAbortedException {
+            do {
+                if (m_pgNo + 1 >= m_file.numPages(m_column))
+                    return false;
+                m_pgNo++;
+                m_page = (ColumnPage) Database.getBufferPool().getPage(m_tid,
+                        new ColumnPageId(m_file.getId(), m_column, m_pgNo), Permissions.READ_ONLY);
+            } while (m_page.getNumRows() == 0);
+            return true;
+        }
+    }
+
+    /**
+     * @param columns the columns of file to return, in order
+     * @param td the TupleDesc of the returned tuples, whose fields are
+     *   the given columns
+     */
+    public ColumnFileIterator(TransactionId tid, ColumnFile file, int[] columns, TupleDesc td) {
+        m_tid = tid;
+        m_file = file;
+        m_columns = columns.clone();
+        m_td = td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (m_flags != null)
+            throw new DbException("opened twice");
+        m_flags = new Cursor(m_file.deletedColumn());
+        m_cursors = new Cursor[m_columns.length];
+        for (int i = 0; i < m_columns.length; i++)
+            m_cursors[i] = new Cursor(m_columns[i]);
+        m_next = false;
+        m_row = -1;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (m_flags == null)
+            return false;
+        while (!m_next) {
+            int row = m_row + 1;
+            if (m_flags.m_page == null || row >= m_flags.m_page.getFirstRow() + m_flags.m_page.getNumRows()) {
+                if (!m_flags.nextPage())
+                    return false;
+                row = m_flags.m_page.getFirstRow();
+            }
+            m_row = row;
+            m_next = m_flags.m_page.getInt(row - m_flags.m_page.getFirstRow()) == 0;
+        }
+        return true;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Tuple t = new Tuple(m_td);
+        for (int i = 0; i < m_cursors.length; i++) {
+            Cursor c = m_cursors[i];
+            if (!c.seek(m_row))
+                throw new DbException("row " + m_row + " is missing from column " + c.m_column + " of "
+                        + m_file.getFile());
+            t.setField(i, c.m_page.getField(m_row - c.m_page.getFirstRow()));
+        }
+        t.setRecordId(new RecordId(m_flags.m_page.getId(), m_row));
+        m_next = false;
+        return t;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    public void close() {
+        m_flags = null;
+        m_cursors = null;
+    }
+}
@@ -0,0 +1,408 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A page of one column of a {@link ColumnFile}: the values of that column
+ * for a run of consecutive rows of the table.
+ * <p>
+ * The page starts with a header of the first row's number (an int), the
+ * number of rows (an int) and the encoding of the values (a byte). A page of
+ * zeroes is empty. The values follow in one of these encodings, whichever
+ * is smallest when the page is written:
+ * <ul>
+ * <li>{@link #PLAIN}: each value in turn; an int takes 4 bytes and a string
+ * an unsigned short length followed by one byte per character.
+ * <li>{@link #RLE}: the number of runs (an int), then each run as a value
+ * followed by its length (an unsigned short).
+ * <li>{@link #DICT}: the number of distinct values (an int), the values,
+ * then one code per row indexing them: a byte when there are at most 256
+ * distinct values, an unsigned short otherwise.
+ * <li>{@link #BITS}: one bit per row, for int columns holding only 0 and 1
+ * such as the deletion flags of the table.
+ * </ul>
+ * In memory the page keeps the decoded values, together with the encoded
+ * size each encoding would take, so appends can tell cheaply whether the
+ * page is full.
+ *
+ * @see ColumnFile
+ */
+public class ColumnPage implements Page {
+
+    /** Bytes of the page header. */
+    public static final int HEADER_SIZE = 9;
+
+    /** Most rows a page holds, whatever their encoding. */
+    public static final int MAX_ROWS = 16384;
+
+    public static final byte PLAIN = 0;
+    public static final byte RLE = 1;
+    public static final byte DICT = 2;
+    public static final byte BITS = 3;
+
+    private final ColumnPageId m_pid;
+    private final Type m_type;
+    private final int m_pageSize;
+    private int m_firstRow;
+    private int m_rows;
+    private int[] m_ints; //values of an int column
+    private String[] m_strings; //values of a string column
+    private byte[] m_oldData;
+    private TransactionId m_dirtier;
+
+    //encoded sizes of the values so far, valid unless m_statsStale
+    private boolean m_statsStale;
+    private int m_plainBytes;
+    private int m_runs;
+    private int m_runBytes;
+    private HashMap<Object, Integer> m_dict;
+    private int m_dictBytes;
+    private boolean m_bits;
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk, in
+     * the format described above. The type of the values is that of the
+     * page's column in the catalog; the deletion flags are ints.
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        m_pid = id;
+        TupleDesc td = Database.getCatalog().getTupleDesc(id.getTableId());
+        m_type = id.getColumn() < td.numFields() ? td.getFieldType(id.getColumn()) : Type.INT_TYPE;
+        m_pageSize = Database.getCatalog().getDatabaseFile(id.getTableId()).getPageSize();
+        decode(ByteBuffer.wrap(data));
+        resetStats();
+        m_oldData = data.clone();
+    }
+
+    /** @return the size of the values in an uncompressed page image */
+    private static int valueSize(Object v) {
+        return v instanceof String ? 2 + ((String) v).length() : Type.INT_TYPE.getLen();
+    }
+
+    private void decode(ByteBuffer in) throws IOException {
+        try {
+            m_firstRow = in.getInt();
+            m_rows = in.getInt();
+            byte encoding = in.get();
+            if (m_rows < 0 || m_rows > MAX_ROWS)
+                throw new IOException("corrupt column page " + m_pid);
+            allocate(Math.max(m_rows, 16));
+            switch (encoding) {
+            case PLAIN:
+                for (int i = 0; i < m_rows; i++)
+                    set(i, readValue(in));
+                break;
+            case RLE: {
+                int runs = in.getInt();
+                int row = 0;
+                for (int r = 0; r < runs; r++) {
+                    Object v = readValue(in);
+                    int len = in.getShort() & 0xffff;
+                    for (int i = 0; i < len; i++)
+                        set(row++, v);
+                }
+                if (row != m_rows)
+                    throw new IOException("corrupt column page " + m_pid);
+                break;
+            }
+            case DICT: {
+                Object[] dict = new Object[in.getInt()];
+                for (int d = 0; d < dict.length; d++)
+                    dict[d] = readValue(in);
+                for (int i = 0; i < m_rows; i++)
+                    set(i, dict[dict.length <= 256 ? in.get() & 0xff : in.getShort() & 0xffff]);
+                break;
+            }
+            case BITS:
+                if (m_type != Type.INT_TYPE)
+                    throw new IOException("corrupt column page " + m_pid);
+                for (int i = 0; i < m_rows; i++)
+                    m_ints[i] = (in.get(HEADER_SIZE + i / 8) >>> (i % 8)) & 1;
+                break;
+            default:
+                throw new IOException("unknown encoding " + encoding + " on column page " + m_pid);
+            }
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("corrupt column page " + m_pid);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("corrupt column page " + m_pid);
+        }
+    }
+
+    private Object readValue(ByteBuffer in) {
+        if (m_type == Type.STRING_TYPE) {
+            int len = in.getShort() & 0xffff;
+            byte bs[] = new byte[len];
+            in.get(bs);
+            return new String(bs);
+        }
+        return in.getInt();
+    }
+
+    private void writeValue(ByteBuffer out, Object v) {
+        if (v instanceof String) {
+            String s = (String) v;
+            out.putShort((short) s.length());
+            for (int i = 0; i < s.length(); i++)
+                out.put((byte) s.charAt(i)); // low byte, as StringField.serialize
+        } else {
+            out.putInt((Integer) v);
+        }
+    }
+
+    private void allocate(int size) {
+        if (m_type == Type.STRING_TYPE)
+            m_strings = m_strings == null ? new String[size] : Arrays.copyOf(m_strings, size);
+        else
+            m_ints = m_ints == null ? new int[size] : Arrays.copyOf(m_ints, size);
+    }
+
+    private void set(int i, Object v) {
+        if (m_type == Type.STRING_TYPE)
+            m_strings[i] = (String) v;
+        else
+            m_ints[i] = (Integer) v;
+    }
+
+    private Object get(int i) {
+        return m_type == Type.STRING_TYPE ? (Object) m_strings[i] : (Object) m_ints[i];
+    }
+
+    private void resetStats() {
+        m_plainBytes = 0;
+        m_runs = 0;
+        m_runBytes = 0;
+        m_dict = new HashMap<Object, Integer>();
+        m_dictBytes = 0;
+        m_bits = m_type == Type.INT_TYPE;
+        for (int i = 0; i < m_rows; i++)
+            count(i);
+        m_statsStale = false;
+    }
+
+    /** Add row i, the last one, to the encoded sizes. */
+    private void count(int i) {
+        Object v = get(i);
+        int size = valueSize(v);
+        m_plainBytes += size;
+        if (i == 0 || !v.equals(get(i - 1))) { //runs never outgrow their length, as MAX_ROWS < 65536
+            m_runs++;
+            m_runBytes += size + 2;
+        }
+        if (!m_dict.containsKey(v)) {
+            m_dict.put(v, m_dict.size());
+            m_dictBytes += size;
+        }
+        if (m_bits && m_ints[i] != 0 && m_ints[i] != 1)
+            m_bits = false;
+    }
+
+    private int plainSize() {
+        return m_plainBytes;
+    }
+
+    private int rleSize() {
+        return 4 + m_runBytes;
+    }
+
+    private int dictSize() {
+        return 4 + m_dictBytes + m_rows * (m_dict.size() <= 256 ? 1 : 2);
+    }
+
+    private int bitsSize() {
+        return m_bits ? (m_rows + 7) / 8 : Integer.MAX_VALUE;
+    }
+
+    /** @return the encoding that stores the page's values in the fewest bytes */
+    public byte getEncoding() {
+        if (m_statsStale)
+            resetStats();
+        byte best = PLAIN;
+        int size = plainSize();
+        if (rleSize() < size) {
+            best = RLE;
+            size = rleSize();
+        }
+        if (dictSize() < size) {
+            best = DICT;
+            size = dictSize();
+        }
+        if (bitsSize() < size)
+            best = BITS;
+        return best;
+    }
+
+    /** @return the bytes the values take in the page's encoding */
+    private int encodedSize() {
+        if (m_statsStale)
+            resetStats();
+        return Math.min(Math.min(plainSize(), rleSize()), Math.min(dictSize(), bitsSize()));
+    }
+
+    public ColumnPageId getId() {
+        return m_pid;
+    }
+
+    /** @return the number of the page's first row, if it has any */
+    public int getFirstRow() {
+        return m_firstRow;
+    }
+
+    /** @return the number of rows on the page */
+    public int getNumRows() {
+        return m_rows;
+    }
+
+    /** @return the value of the i-th row of the page */
+    public Field getField(int i) {
+        if (i < 0 || i >= m_rows)
+            throw new IndexOutOfBoundsException("row " + i + " of " + m_pid);
+        if (m_type == Type.STRING_TYPE)
+            return new StringField(m_strings[i], Type.STRING_LEN);
+        return new IntField(m_ints[i]);
+    }
+
+    /** @return the value of the i-th row of a page of an int column */
+    public int getInt(int i) {
+        if (i < 0 || i >= m_rows)
+            throw new IndexOutOfBoundsException("row " + i + " of " + m_pid);
+        return m_ints[i];
+    }
+
+    /**
+     * Overwrite the value of the i-th row of a page of an int column. Used
+     * for the deletion flags, which always fit the page as {@link #BITS}.
+     */
+    public void setInt(int i, int v) {
+        if (i < 0 || i >= m_rows)
+            throw new IndexOutOfBoundsException("row " + i + " of " + m_pid);
+        m_ints[i] = v;
+        m_statsStale = true;
+    }
+
+    /**
+     * Add a value for the given row at the end of the page. The first row
+     * appended to an empty page sets the page's first row; later ones must
+     * follow it.
+     *
+     * @return false, leaving the page unchanged, if the value does not fit
+     * @throws DbException if row does not follow the page's last row
+     */
+    public boolean append(int row, Field f) throws DbException {
+        if (f.getType() != m_type)
+            throw new DbException("ColumnPage: type mismatch");
+        if (m_rows > 0 && row != m_firstRow + m_rows)
+            throw new DbException("row " + row + " does not follow the rows of " + m_pid);
+        if (m_rows == MAX_ROWS)
+            return false;
+        if (m_statsStale)
+            resetStats();
+
+        Object v;
+        if (m_type == Type.STRING_TYPE) {
+            String s = ((StringField) f).getValue();
+            v = s.length() > Type.STRING_LEN ? s.substring(0, Type.STRING_LEN) : s;
+        } else {
+            v = ((IntField) f).getValue();
+        }
+        if (m_rows == 0)
+            m_firstRow = row;
+        if (m_rows == (m_type == Type.STRING_TYPE ? m_strings.length : m_ints.length))
+            allocate(m_rows * 2);
+        set(m_rows, v);
+
+        //count the value, and take it back if no encoding fits the page any more
+        int plain = m_plainBytes, runs = m_runs, runBytes = m_runBytes, dictBytes = m_dictBytes;
+        boolean bits = m_bits;
+        boolean added = !m_dict.containsKey(v);
+        m_rows++;
+        count(m_rows - 1);
+        if (HEADER_SIZE + encodedSize() <= m_pageSize)
+            return true;
+        m_rows--;
+        m_plainBytes = plain;
+        m_runs = runs;
+        m_runBytes = runBytes;
+        m_dictBytes = dictBytes;
+        m_bits = bits;
+        if (added)
+            m_dict.remove(v);
+        return false;
+    }
+
+    public byte[] getPageData() {
+        byte[] data = new byte[m_pageSize];
+        if (m_rows == 0)
+            return data; //an empty page is all zeroes
+        ByteBuffer out = ByteBuffer.wrap(data);
+        byte encoding = getEncoding();
+        out.putInt(m_firstRow);
+        out.putInt(m_rows);
+        out.put(encoding);
+        switch (encoding) {
+        case PLAIN:
+            for (int i = 0; i < m_rows; i++)
+                writeValue(out, get(i));
+            break;
+        case RLE: {
+            out.putInt(m_runs);
+            int start = 0;
+            for (int i = 1; i <= m_rows; i++) {
+                if (i == m_rows || !get(i).equals(get(start))) {
+                    writeValue(out, get(start));
+                    out.putShort((short) (i - start));
+                    start = i;
+                }
+            }
+            break;
+        }
+        case DICT: {
+            Object[] dict = new Object[m_dict.size()];
+            for (java.util.Map.Entry<Object, Integer> e : m_dict.entrySet())
+                dict[e.getValue()] = e.getKey();
+            out.putInt(dict.length);
+            for (Object v : dict)
+                writeValue(out, v);
+            for (int i = 0; i < m_rows; i++) {
+                int code = m_dict.get(get(i));
+                if (dict.length <= 256)
+                    out.put((byte) code);
+                else
+                    out.putShort((short) code);
+            }
+            break;
+        }
+        case BITS:
+            for (int i = 0; i < m_rows; i++)
+                data[HEADER_SIZE + i / 8] |= m_ints[i] << (i % 8);
+            break;
+        }
+        return data;
+    }
+
+    public Page getBeforeImage() {
+        try {
+            return new ColumnPage(m_pid, m_oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        m_oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        m_dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return m_dirtier;
+    }
+}
@@ -0,0 +1,64 @@
+package simpledb;
+
+/** Unique identifier for ColumnPage objects: a page of one column of a ColumnFile. */
+public class ColumnPageId implements PageId {
+
+    private final int m_tableId;
+    private final int m_column;
+    private final int m_pgNum;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific column of a specific table.
+     *
+     * @param tableId The table that is being referenced
+     * @param column The column of the table, or the table's number of
+     *   fields for its deletion flags
+     * @param pgNo The page number in that column's segment file.
+     */
+    public ColumnPageId(int tableId, int column, int pgNo) {
+        m_tableId = tableId;
+        m_column = column;
+        m_pgNum = pgNo;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return m_tableId;
+    }
+
+    /** @return the column of the table this page holds values of */
+    public int getColumn() {
+        return m_column;
+    }
+
+    /**
+     * @return the page number in the segment file of the column
+     */
+    public int pageNumber() {
+        return m_pgNum;
+    }
+
+    public int hashCode() {
+        return (31 * m_tableId + m_column) * 31 + m_pgNum;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof ColumnPageId))
+            return false;
+        ColumnPageId other = (ColumnPageId) o;
+        return m_tableId == other.m_tableId && m_column == other.m_column && m_pgNum == other.m_pgNum;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        return new int[] { m_tableId, m_column, m_pgNum };
+    }
+
+    public String toString() {
+        return "ColumnPageId(" + m_tableId + ", " + m_column + ", " + m_pgNum + ")";
+    }
+}
@@ -0,0 +1,71 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColumnScan is a sequential scan over some of the fields of a table stored
+ * in a {@link ColumnFile}. Only the pages of those fields' columns are read,
+ * so a query touching a few fields of a wide table reads a fraction of it.
+ * The returned tuples have just the scanned fields, in the order given.
+ */
+public class ColumnScan extends SeqScan {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ColumnFile m_file;
+    private final int[] m_columns;
+    private final TupleDesc m_td;
+
+    /**
+     * Creates a scan over the given fields of the specified table as a part
+     * of the specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan, which must be stored in a
+     *   ColumnFile.
+     * @param tableAlias the alias of this table; the returned tupleDesc has
+     *   fields named tableAlias.fieldName
+     * @param fieldNames the names of the fields to return, in order
+     * @throws NoSuchElementException if the table has no field of one of
+     *   the names
+     */
+    public ColumnScan(TransactionId tid, int tableid, String tableAlias, String[] fieldNames) {
+        super(tid, tableid, tableAlias);
+        m_file = (ColumnFile) getFile();
+        TupleDesc fileDesc = m_file.getTupleDesc();
+        m_columns = new int[fieldNames.length];
+        Type[] types = new Type[fieldNames.length];
+        String[] names = new String[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            m_columns[i] = fileDesc.fieldNameToIndex(fieldNames[i]);
+            types[i] = fileDesc.getFieldType(m_columns[i]);
+            names[i] = fieldNames[i];
+        }
+        m_td = new TupleDesc(types, names);
+    }
+
+    /**
+     * @return the indexes, in the table, of the fields this scan returns
+     */
+    public int[] getColumns() {
+        return m_columns.clone();
+    }
+
+    protected DbFileIterator newIterator(TransactionId tid) {
+        return new ColumnFileIterator(tid, m_file, m_columns, m_td);
+    }
+
+    /**
+     * Returns the TupleDesc of the scanned fields, prefixed with the
+     * tableAlias string from the constructor.
+     */
+    public TupleDesc getTupleDesc() {
+        Type[] types = new Type[m_columns.length];
+        String[] names = new String[m_columns.length];
+        for (int i = 0; i < m_columns.length; i++) {
+            types[i] = m_td.getFieldType(i);
+            names[i] = getAlias() + "." + m_td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
+    }
+}
@@ -0,0 +1,458 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A HeapFile whose pages are deflated on disk. Pages are compressed in
+ * {@link #writePage} and inflated in {@link #readPage}, so the buffer pool,
+ * the log and everything above them see ordinary pages.
+ * <p>
+ * Each page is stored in an extent of the table file: a run of bytes
+ * holding the deflated page image, or the raw image if deflating does not
+ * make it smaller. A page-offset index in a side file next to the table
+ * maps page numbers to extents, with 16 bytes per page: the extent's
+ * offset, the number of bytes stored and the extent's capacity. A page that
+ * outgrows its extent moves to another one, taken from the free extents in
+ * order of capacity or else from the end of the file. The extent it leaves
+ * is only freed once the index that no longer points at it has been forced,
+ * so a crash never leaves the index naming an extent that holds another
+ * page. The free extents are not stored: they are the gaps the index
+ * leaves when it is loaded.
+ * <p>
+ * A table file without an index, such as one written by
+ * {@link HeapFileEncoder}, holds raw pages and must be converted with
+ * {@link #compress} before it is opened.
+ *
+ * @see HeapFile
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    /** Suffix of the page-offset index, appended to the table file name. */
+    public static final String SUFFIX = ".idx";
+
+    /** Extents are allocated in multiples of this many bytes. */
+    public static final int EXTENT_ALIGN = 128;
+
+    private static final int ENTRY_BYTES = 16;
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+    private static final ThreadLocal<byte[][]> BUFFERS = new ThreadLocal<byte[][]>() {
+        protected byte[][] initialValue() {
+            // uncompressed and compressed page images
+            return new byte[][] { new byte[BufferPool.PAGE_SIZE], new byte[BufferPool.PAGE_SIZE] };
+        }
+    };
+
+    /** @return this thread's BUFFERS, grown to hold pages of pageSize bytes */
+    private static byte[][] buffers(int pageSize) {
+        byte[][] bufs = BUFFERS.get();
+        if (bufs[0].length < pageSize) {
+            bufs[0] = new byte[pageSize];
+            bufs[1] = new byte[pageSize];
+        }
+        return bufs;
+    }
+
+    private final ChannelCache.Handle m_index;
+    private final ByteBuffer m_entry = ByteBuffer.allocate(ENTRY_BYTES); //guarded by this
+    private int m_numPages; //guarded by this
+    private long[] m_offsets; //guarded by this; null until the index is loaded on first use
+    private int[] m_lengths; //guarded by this
+    private int[] m_capacities; //guarded by this
+    private long m_end; //end of the last extent, guarded by this
+    private TreeMap<Integer, ArrayList<Long>> m_free; //offsets of free extents by capacity, guarded by this
+    private TreeMap<Integer, ArrayList<Long>> m_abandoned; //left by moved pages since the index was last forced
+
+    /**
+     * Constructs a compressed heap file backed by the specified file, whose
+     * pages are in the given format and of the given size.
+     *
+     * @throws IllegalArgumentException if f holds raw pages; see {@link #compress}
+     */
+    public CompressedHeapFile(File f, TupleDesc td, PageFormat format, int pageSize) {
+        super(f, td, false, format, pageSize);
+        if (isRaw(f))
+            throw new IllegalArgumentException(f + " holds raw pages and has to be compressed first");
+        try {
+            indexFile(f).createNewFile(); //marks f as compressed before anything is written to it
+        } catch (IOException e) {
+            System.err.println("error creating the page index of " + f);
+            System.exit(1);
+        }
+        m_index = Database.getChannelCache().open(indexFile(f));
+    }
+
+    /**
+     * Constructs a compressed heap file backed by the specified file, whose
+     * pages are in the given format.
+     */
+    public CompressedHeapFile(File f, TupleDesc td, PageFormat format) {
+        this(f, td, format, BufferPool.getPageSize());
+    }
+
+    /**
+     * Constructs a compressed heap file backed by the specified file.
+     */
+    public CompressedHeapFile(File f, TupleDesc td) {
+        this(f, td, PageFormat.FIXED);
+    }
+
+    /** @return the page-offset index of the table stored in f */
+    public static File indexFile(File f) {
+        return new File(f.getPath() + SUFFIX);
+    }
+
+    /** Load the index, unless it is loaded already. Called with this held. */
+    private void loadIndex() throws IOException {
+        if (m_offsets != null)
+            return;
+        ByteBuffer entries;
+        FileChannel index = m_index.acquire();
+        try {
+            int n = (int) (index.size() / ENTRY_BYTES);
+            entries = ByteBuffer.allocate(n * ENTRY_BYTES);
+            while (entries.hasRemaining() && index.read(entries, entries.position()) >= 0) {
+            }
+        } finally {
+            m_index.release();
+        }
+        entries.flip();
+        int n = entries.remaining() / ENTRY_BYTES;
+        m_offsets = new long[Math.max(16, n)];
+        m_lengths = new int[m_offsets.length];
+        m_capacities = new int[m_offsets.length];
+        m_end = 0;
+        for (int i = 0; i < n; i++) {
+            m_offsets[i] = entries.getLong();
+            m_lengths[i] = entries.getInt();
+            m_capacities[i] = entries.getInt();
+            m_end = Math.max(m_end, m_offsets[i] + m_capacities[i]);
+        }
+        m_numPages = n;
+
+        // whatever lies between the extents of the index is free
+        m_free = new TreeMap<Integer, ArrayList<Long>>();
+        m_abandoned = new TreeMap<Integer, ArrayList<Long>>();
+        Integer[] byOffset = new Integer[n];
+        for (int i = 0; i < n; i++)
+            byOffset[i] = i;
+        Arrays.sort(byOffset, new java.util.Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.valueOf(m_offsets[a]).compareTo(m_offsets[b]);
+            }
+        });
+        long pos = 0;
+        for (int i : byOffset) {
+            if (m_offsets[i] > pos)
+                addExtent(m_free, pos, (int) (m_offsets[i] - pos));
+            pos = Math.max(pos, m_offsets[i] + m_capacities[i]);
+        }
+    }
+
+    private static void addExtent(TreeMap<Integer, ArrayList<Long>> extents, long offset, int capacity) {
+        ArrayList<Long> offsets = extents.get(capacity);
+        if (offsets == null) {
+            offsets = new ArrayList<Long>();
+            extents.put(capacity, offsets);
+        }
+        offsets.add(offset);
+    }
+
+    /**
+     * Find room for an extent of the given capacity: the smallest free
+     * extent that is big enough, with what it has to spare freed again, or
+     * else the end of the file. Called with this held.
+     *
+     * @return the offset of the extent
+     */
+    private long allocate(int capacity) throws IOException {
+        if (m_free.ceilingKey(capacity) == null && !m_abandoned.isEmpty()) {
+            force(m_index); //nothing on disk points at the abandoned extents any more
+            for (Map.Entry<Integer, ArrayList<Long>> e : m_abandoned.entrySet()) {
+                for (long offset : e.getValue())
+                    addExtent(m_free, offset, e.getKey());
+            }
+            m_abandoned.clear();
+        }
+        Map.Entry<Integer, ArrayList<Long>> e = m_free.ceilingEntry(capacity);
+        if (e == null) {
+            long offset = m_end;
+            m_end += capacity;
+            return offset;
+        }
+        ArrayList<Long> offsets = e.getValue();
+        long offset = offsets.remove(offsets.size() - 1);
+        if (offsets.isEmpty())
+            m_free.remove(e.getKey());
+        if (e.getKey() > capacity)
+            addExtent(m_free, offset + capacity, e.getKey() - capacity);
+        return offset;
+    }
+
+    /** @return whether f holds raw pages that {@link #compress} has not converted */
+    public static boolean isRaw(File f) {
+        return !indexFile(f).exists() && f.length() > 0;
+    }
+
+    /**
+     * Replace the raw pages in f, such as a file written by
+     * {@link HeapFileEncoder}, with their compressed form and write the
+     * index, so that f can be opened as a CompressedHeapFile. This reads and
+     * writes the whole table, and is meant to be run once, offline, rather
+     * than when the catalog is loaded.
+     *
+     * @throws IOException if f is compressed already or cannot be converted
+     */
+    public static void compress(File f, int pageSize) throws IOException {
+        File indexFile = indexFile(f);
+        if (indexFile.exists())
+            throw new IOException(f + " is compressed already");
+        File tmp = new File(f.getPath() + ".tmp");
+        File tmpIndex = indexFile(tmp);
+        RandomAccessFile in = new RandomAccessFile(f, "r");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpIndex)));
+        try {
+            byte[] page = new byte[pageSize];
+            byte[] padding = new byte[EXTENT_ALIGN];
+            long end = 0;
+            int n = (int) (in.length() / pageSize);
+            for (int i = 0; i < n; i++) {
+                in.readFully(page);
+                int len = deflate(ByteBuffer.wrap(page));
+                if (len < 0) {
+                    len = page.length;
+                    out.write(page);
+                } else {
+                    out.write(buffers(pageSize)[1], 0, len);
+                }
+                int cap = extentSize(len);
+                out.write(padding, 0, cap - len);
+                index.writeLong(end);
+                index.writeInt(len);
+                index.writeInt(cap);
+                end += cap;
+            }
+        } finally {
+            in.close();
+            out.close();
+            index.close();
+        }
+        // the raw file is only replaced once its compressed form is complete
+        if (!f.delete() || !tmp.renameTo(f) || !tmpIndex.renameTo(indexFile))
+            throw new IOException("could not replace " + f + " by its compressed form");
+    }
+
+    private static int extentSize(int len) {
+        return (len + EXTENT_ALIGN - 1) / EXTENT_ALIGN * EXTENT_ALIGN;
+    }
+
+    /**
+     * Deflate the page image in src into the second of this thread's
+     * BUFFERS.
+     *
+     * @return the deflated length, or -1 if the page does not get smaller
+     */
+    private static int deflate(ByteBuffer src) {
+        int n = src.remaining();
+        byte[][] bufs = buffers(n);
+        byte[] in;
+        int inOff;
+        if (src.hasArray()) {
+            in = src.array();
+            inOff = src.arrayOffset() + src.position();
+        } else {
+            in = bufs[0];
+            inOff = 0;
+            src.duplicate().get(in, 0, n);
+        }
+        Deflater d = DEFLATER.get();
+        d.reset();
+        d.setInput(in, inOff, n);
+        d.finish();
+        int len = 0;
+        while (!d.finished() && len < n - 1)
+            len += d.deflate(bufs[1], len, n - 1 - len);
+        return d.finished() ? len : -1;
+    }
+
+    // see HeapFile.java for javadocs
+    public synchronized int numPages() {
+        try {
+            loadIndex();
+        } catch (IOException e) {
+            System.err.println("error loading the page index of " + getFile());
+            System.exit(1);
+        }
+        return m_numPages;
+    }
+
+    // see HeapFile.java for javadocs
+    protected void readImage(int pgNo, ByteBuffer dst) throws IOException {
+        long offset;
+        int len;
+        byte[][] bufs = buffers(getPageSize());
+        while (true) {
+            synchronized (this) {
+                loadIndex();
+                if (pgNo >= m_numPages)
+                    throw new IllegalArgumentException();
+                offset = m_offsets[pgNo];
+                len = m_lengths[pgNo];
+            }
+            ByteBuffer packed = ByteBuffer.wrap(bufs[1], 0, len);
+            FileChannel fc = getHandle().acquire();
+            try {
+                while (packed.hasRemaining() && fc.read(packed, offset + packed.position()) >= 0) {
+                }
+            } finally {
+                getHandle().release();
+            }
+            synchronized (this) {
+                if (m_offsets[pgNo] == offset && m_lengths[pgNo] == len)
+                    break;
+            }
+            // the page moved while we read it, and its old extent may hold another page now
+        }
+        if (len == getPageSize()) { // stored raw
+            dst.put(bufs[1], 0, len);
+            return;
+        }
+        Inflater inf = INFLATER.get();
+        inf.reset();
+        inf.setInput(bufs[1], 0, len);
+        try {
+            int n = dst.remaining();
+            byte[] out;
+            int outOff;
+            if (dst.hasArray()) {
+                out = dst.array();
+                outOff = dst.arrayOffset() + dst.position();
+            } else {
+                out = bufs[0];
+                outOff = 0;
+            }
+            int got = 0;
+            while (got < n && !inf.finished()) {
+                int k = inf.inflate(out, outOff + got, n - got);
+                if (k == 0 && (inf.needsInput() || inf.needsDictionary()))
+                    throw new IOException("truncated page " + pgNo + " in " + getFile());
+                got += k;
+            }
+            if (got != n)
+                throw new IOException("short page " + pgNo + " in " + getFile());
+            if (dst.hasArray())
+                dst.position(dst.position() + n);
+            else
+                dst.put(out, 0, n);
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt page " + pgNo + " in " + getFile());
+        }
+    }
+
+    // see HeapFile.java for javadocs
+    protected void writeImage(int pgNo, ByteBuffer image) throws IOException {
+        int len = deflate(image);
+        byte[] data = buffers(getPageSize())[1];
+        if (len < 0) { // keep it raw
+            len = image.remaining();
+            data = buffers(getPageSize())[0];
+            image.duplicate().get(data, 0, len);
+        }
+
+        long offset;
+        int capacity;
+        synchronized (this) {
+            loadIndex();
+            if (pgNo > m_numPages)
+                throw new IllegalArgumentException("page " + pgNo + " is past the end of " + getFile());
+            if (pgNo < m_numPages && m_capacities[pgNo] >= len) { // rewrite the extent in place
+                offset = m_offsets[pgNo];
+                capacity = m_capacities[pgNo];
+            } else { // a free extent, or a new one at the end
+                capacity = extentSize(len);
+                offset = allocate(capacity);
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.wrap(data, 0, len);
+        FileChannel fc = getHandle().acquire();
+        try {
+            while (out.hasRemaining())
+                fc.write(out, offset + out.position());
+        } finally {
+            getHandle().release();
+        }
+
+        // the extent holds the new image before the index points readers at it
+        synchronized (this) {
+            if (pgNo == m_offsets.length) {
+                int size = m_offsets.length * 2;
+                m_offsets = Arrays.copyOf(m_offsets, size);
+                m_lengths = Arrays.copyOf(m_lengths, size);
+                m_capacities = Arrays.copyOf(m_capacities, size);
+            }
+            if (pgNo < m_numPages && m_offsets[pgNo] != offset)
+                addExtent(m_abandoned, m_offsets[pgNo], m_capacities[pgNo]);
+            m_offsets[pgNo] = offset;
+            m_lengths[pgNo] = len;
+            m_capacities[pgNo] = capacity;
+            m_numPages = Math.max(m_numPages, pgNo + 1);
+            m_entry.clear();
+            m_entry.putLong(offset);
+            m_entry.putInt(len);
+            m_entry.putInt(capacity);
+            m_entry.flip();
+            FileChannel index = m_index.acquire();
+            try {
+                while (m_entry.hasRemaining())
+                    index.write(m_entry, (long) pgNo * ENTRY_BYTES + m_entry.position());
+            } finally {
+                m_index.release();
+            }
+        }
+    }
+
+    // see HeapFile.java for javadocs
+    protected void writeImages(int firstPgNo, ByteBuffer images) throws IOException {
+        int pgNo = firstPgNo;
+        while (images.hasRemaining()) {
+            ByteBuffer image = images.duplicate();
+            image.limit(image.position() + getPageSize());
+            writeImage(pgNo++, image);
+            images.position(image.limit());
+        }
+    }
+
+    // see HeapFile.java for javadocs
+    protected void force() throws IOException {
+        super.force();
+        force(m_index);
+    }
+
+    /**
+     * @return the bytes of the table file taken by extents
+     */
+    public synchronized long getStoredBytes() {
+        numPages(); //loads the index
+        return m_end;
+    }
+}
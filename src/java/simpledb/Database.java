@@ -17,13 +17,29 @@ public class Database {
     private static AtomicReference<Database> _instance = new AtomicReference<Database>(new Database());
     private final Catalog _catalog;
     private final BufferPool _bufferpool;
+    private final ChannelCache _channels;
+    private BackgroundWriter _writer;
 
     private final static String LOGFILENAME = "log";
+
+    /** System property naming the {@link EvictionPolicy.Kind} used by the buffer pool. */
+    public final static String EVICTION_POLICY_PROPERTY = "simpledb.evictionPolicy";
+
+    /** System property that makes the buffer pool read pages into an off-heap {@link PageArena} when set to true. */
+    public final static String OFF_HEAP_PROPERTY = "simpledb.offHeapFrames";
+
+    /** System property that disables the {@link BackgroundWriter} when set to false. */
+    public final static String BACKGROUND_WRITER_PROPERTY = "simpledb.backgroundWriter";
+
+    /** System property giving the number of files the {@link ChannelCache} keeps open. */
+    public final static String MAX_OPEN_FILES_PROPERTY = "simpledb.maxOpenFiles";
+
     private final LogFile _logfile;
 
     private Database() {
         _catalog = new Catalog();
-        _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
+        _channels = new ChannelCache(Integer.getInteger(MAX_OPEN_FILES_PROPERTY, ChannelCache.DEFAULT_MAX_OPEN));
+        _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES, getEvictionPolicy(), useOffHeapFrames());
         LogFile tmp = null;
         try {
             tmp = new LogFile(new File(LOGFILENAME));
@@ -32,9 +48,54 @@ public class Database {
             System.exit(1);
         }
         _logfile = tmp;
+        startWriter();
         // startControllerThread();
     }
 
+    /** Stop the current background writer, if any, and start one for the current buffer pool. */
+    private synchronized void startWriter() {
+        if (_writer != null)
+            _writer.shutdown();
+        _writer = null;
+        if (!"false".equalsIgnoreCase(System.getProperty(BACKGROUND_WRITER_PROPERTY))) {
+            _writer = new BackgroundWriter(_bufferpool);
+            _writer.start();
+        }
+    }
+
+    private synchronized void stopWriter() {
+        if (_writer != null)
+            _writer.shutdown();
+        _writer = null;
+    }
+
+    /** Return the background writer of the static Database instance, null if disabled */
+    public static BackgroundWriter getBackgroundWriter() {
+        Database db = _instance.get();
+        synchronized (db) {
+            return db._writer;
+        }
+    }
+
+    /**
+     * Return the eviction policy configured for this deployment through the
+     * {@link #EVICTION_POLICY_PROPERTY} system property, LRU if unset.
+     */
+    public static EvictionPolicy.Kind getEvictionPolicy() {
+        String name = System.getProperty(EVICTION_POLICY_PROPERTY);
+        if (name == null)
+            return EvictionPolicy.Kind.LRU;
+        return EvictionPolicy.Kind.valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * Return whether buffer pools are configured through the
+     * {@link #OFF_HEAP_PROPERTY} system property to use off-heap frames.
+     */
+    public static boolean useOffHeapFrames() {
+        return Boolean.getBoolean(OFF_HEAP_PROPERTY);
+    }
+
     /** Return the log file of the static Database instance */
     public static LogFile getLogFile() {
         return _instance.get()._logfile;
@@ -45,6 +106,11 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /** Return the cache of open table files of the static Database instance */
+    public static ChannelCache getChannelCache() {
+        return _instance.get()._channels;
+    }
+
     /** Return the catalog of the static Database instance */
     public static Catalog getCatalog() {
         return _instance.get()._catalog;
@@ -55,11 +121,20 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(pages, getEvictionPolicy());
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * using the specified eviction policy and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy.Kind policy) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), new BufferPool(pages, policy, useOffHeapFrames()));
+            _instance.get().startWriter();
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -75,7 +150,9 @@ public class Database {
 
     // reset the database, used for unit tests only.
     public static void reset() {
-        _instance.set(new Database());
+        Database old = _instance.getAndSet(new Database());
+        old.stopWriter();
+        old._channels.closeAll(); //files still in use reopen through the old cache
     }
 
 }
@@ -3,6 +3,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * The interface for database files on disk. Each table is represented by a
@@ -19,6 +20,16 @@ public interface DbFile {
      */
     public Page readPage(PageId id);
 
+    /**
+     * Read the specified page from disk into frame, a buffer of the page
+     * size positioned at 0. If the returned page is a {@link FramedPage} it
+     * may keep using frame until it is detached; otherwise the frame is free
+     * again as soon as this method returns.
+     *
+     * @throws IllegalArgumentException if the page does not exist in this file.
+     */
+    public Page readPage(PageId id, ByteBuffer frame);
+
     /**
      * Push the specified page to disk.
      *
@@ -43,6 +54,22 @@ public interface DbFile {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Appends the given tuples to the file on behalf of transaction, packing
+     * them into new pages that are written straight to disk instead of
+     * going through the buffer pool. Used for bulk loads. The new pages are
+     * locked exclusively by tid, and are emptied again if tid aborts.
+     *
+     * @param tid The transaction performing the load
+     * @param tuples The tuples to add.  Each tuple is updated to reflect that
+     *          it is now stored in this file.
+     * @return the number of tuples added
+     * @throws DbException if a tuple cannot be added
+     * @throws IOException if the file can't be written
+     */
+    public int bulkInsert(TransactionId tid, Iterator<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException;
+
     /**
      * Removes the specified tuple from the file on behalf of the specified
      * transaction.
@@ -89,4 +116,11 @@ public interface DbFile {
      */
     public TupleDesc getTupleDesc();
     public int numPages();
+
+    /**
+     * Returns the size in bytes of the pages of this DbFile, which may
+     * differ from table to table.
+     * @return bytes per page of this DbFile.
+     */
+    public int getPageSize();
 }
@@ -0,0 +1,86 @@
+package simpledb;
+
+import java.util.List;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool gives up when it
+ * needs a free frame. The BufferPool reports every page that enters, is
+ * accessed in, or leaves the pool; the policy keeps whatever bookkeeping it
+ * needs and picks victims on request.
+ * <p>
+ * Policies are not thread safe on their own; the BufferPool only calls them
+ * while holding its own monitor.
+ *
+ * @see BufferPool
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Filter handed to {@link #chooseVictim} so that the BufferPool can rule
+     * out pages it cannot or does not want to evict (dirty pages, for example).
+     */
+    public interface VictimFilter {
+        public boolean accept(PageId pid);
+    }
+
+    /** The available policies, selectable at Database/BufferPool construction. */
+    public enum Kind {
+        LRU() {
+            @Override
+            public EvictionPolicy create(int numPages) {
+                return new LruEvictionPolicy();
+            }
+        }, CLOCK() {
+            @Override
+            public EvictionPolicy create(int numPages) {
+                return new ClockEvictionPolicy(numPages);
+            }
+        }, LRU_K() {
+            @Override
+            public EvictionPolicy create(int numPages) {
+                return new LruKEvictionPolicy(LruKEvictionPolicy.DEFAULT_K, numPages);
+            }
+        }, TWO_Q() {
+            @Override
+            public EvictionPolicy create(int numPages) {
+                return new TwoQueueEvictionPolicy(numPages);
+            }
+        };
+
+        /**
+         * @return a fresh policy instance for a pool of numPages frames
+         */
+        public abstract EvictionPolicy create(int numPages);
+    }
+
+    /** A page was read into the pool. */
+    public void pageAdded(PageId pid);
+
+    /** A page already resident in the pool was requested again. */
+    public void pageAccessed(PageId pid);
+
+    /** A page left the pool, either because it was evicted or discarded. */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Pick the page that should be evicted next, considering only pages the
+     * filter accepts. The victim is not removed; the BufferPool calls
+     * {@link #pageRemoved} once it has actually dropped the page.
+     * <p>
+     * This is not a pure query: a policy may update its bookkeeping as it
+     * searches (CLOCK moves its hand and clears the reference bits it
+     * passes), so callers only call it when they are about to evict what it
+     * returns, and use {@link #victimOrder} to look without evicting. A
+     * search that returns null must leave the bookkeeping as it found it, so
+     * that the caller can try again with a wider filter.
+     *
+     * @return the victim, or null if no resident page is accepted by filter
+     */
+    public PageId chooseVictim(VictimFilter filter);
+
+    /**
+     * Return the resident pages in the order the policy would give them up,
+     * best victim first, without changing any of its bookkeeping.
+     */
+    public List<PageId> victimOrder();
+}
@@ -21,6 +21,7 @@ public class Filter extends Operator {
     
     private Predicate m_predicate;
     private DbIterator m_child;
+    private boolean m_pushedDown; //m_child returns only tuples that pass m_predicate
     
     public Filter(Predicate p, DbIterator child) {
         // some code goes here
@@ -42,6 +43,8 @@ public class Filter extends Operator {
             TransactionAbortedException {
         // some code goes here
     	super.open();
+    	//a scan can check the predicate before it builds the tuples
+    	m_pushedDown = m_child instanceof SeqScan && ((SeqScan) m_child).pushDown(m_predicate);
     	m_child.open();
     }
 
@@ -73,7 +76,7 @@ public class Filter extends Operator {
     	
     	while(m_child.hasNext()) {
     		result = m_child.next();
-    		if(m_predicate.filter(result)) {
+    		if(m_pushedDown || m_predicate.filter(result)) {
     			return result;
     		}
     	}
@@ -0,0 +1,27 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A page that keeps its on-disk image in a buffer, which may be a frame it
+ * does not own such as a slot of the buffer pool's {@link PageArena}. Before
+ * the frame is handed to another page, the buffer pool detaches the page
+ * from it.
+ * <p>
+ * Files and the log write such pages straight from their image instead of
+ * going through {@link Page#getPageData}.
+ */
+public interface FramedPage extends Page {
+    /**
+     * @return a read-only view of the page image, positioned at 0 and
+     *   limited to the page size. It reflects later changes to the page, so
+     *   writers must hold the page's latch while using it.
+     */
+    public ByteBuffer getPageImage();
+
+    /**
+     * Stop using the frame the page was created on, copying its contents
+     * to memory owned by the page.
+     */
+    public void detach();
+}
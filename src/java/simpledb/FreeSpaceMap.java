@@ -0,0 +1,207 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records how full each page of a HeapFile is, so that an
+ * insert can go straight to a page with a free slot instead of reading the
+ * table until it finds one.
+ * <p>
+ * Each page has a fill bucket from 0 (full) to {@link #BUCKETS} - 1 (empty).
+ * The buckets are kept in memory together with a bitmap per bucket of the
+ * pages in it, so a search looks at each bucket once however many pages are
+ * too full, and persisted one byte per page in a side file next to the
+ * table, written whenever a page moves to another bucket. The map is only a
+ * hint: pages it does not cover (a missing or short side file) are assumed
+ * to have room, and callers check the page itself before using it and
+ * report what they found.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /** Number of fill buckets. */
+    public static final int BUCKETS = 16;
+
+    /** Suffix of the side file, appended to the table file name. */
+    public static final String SUFFIX = ".fsm";
+
+    private final File m_file;
+    private ChannelCache.Handle m_handle; //the side file, from the first write
+    private int m_length; //bytes in the side file once m_handle is set
+    private byte[] m_buckets;
+    private int m_numPages;
+    private final BitSet m_hasRoom; //pages in any bucket but 0
+    private final BitSet[] m_inBucket = new BitSet[BUCKETS]; //pages in each bucket; [0] unused
+    private int m_hint; //where the last search ended
+    private final ByteBuffer m_one = ByteBuffer.allocate(1);
+
+    /**
+     * Load the map of the table stored in tableFile, which has numPages pages.
+     */
+    public FreeSpaceMap(File tableFile, int numPages) {
+        m_file = new File(tableFile.getPath() + SUFFIX);
+        m_buckets = new byte[Math.max(16, numPages)];
+        m_hasRoom = new BitSet();
+        for (int b = 1; b < BUCKETS; b++)
+            m_inBucket[b] = new BitSet();
+        m_numPages = numPages;
+
+        int known = 0;
+        if (m_file.exists()) {
+            try {
+                RandomAccessFile raf = new RandomAccessFile(m_file, "r");
+                try {
+                    known = (int) Math.min(numPages, raf.length());
+                    raf.readFully(m_buckets, 0, known);
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                known = 0; // rebuilt as pages are visited
+            }
+        }
+        for (int pg = 0; pg < numPages; pg++) {
+            if (pg >= known || m_buckets[pg] < 0 || m_buckets[pg] >= BUCKETS)
+                m_buckets[pg] = (byte) (BUCKETS - 1);
+            place(pg, m_buckets[pg]);
+        }
+    }
+
+    /** @return the fill bucket of a page with free of total slots free */
+    public static int bucket(int free, int total) {
+        if (free <= 0)
+            return 0;
+        return Math.max(1, (int) ((long) free * (BUCKETS - 1) / total));
+    }
+
+    /**
+     * @return the lowest bucket whose pages are sure to have needed of
+     *   total slots free, except that any page with room counts when one
+     *   slot is needed
+     */
+    public static int bucketWithRoom(int needed, int total) {
+        return Math.max(1, (int) (((long) needed * (BUCKETS - 1) + total - 1) / total));
+    }
+
+    /** @return the fill bucket recorded for page pgNo */
+    public synchronized int getBucket(int pgNo) {
+        return pgNo < m_numPages ? m_buckets[pgNo] : BUCKETS - 1;
+    }
+
+    /**
+     * @return a page believed to have a free slot, at or after from if there
+     *   is one and otherwise the first such page, or -1 if the map knows of
+     *   none
+     */
+    public synchronized int findPageWithRoom(int from) {
+        return findPageWithBucket(from, 1);
+    }
+
+    /** @return a page believed to have a free slot, or -1 */
+    public synchronized int findPageWithRoom() {
+        return findPageWithBucket(1);
+    }
+
+    /**
+     * @return a page in bucket minBucket or above, at or after from if there
+     *   is one and otherwise the first such page, or -1 if the map knows of
+     *   none
+     */
+    public synchronized int findPageWithBucket(int from, int minBucket) {
+        int pg = nextPage(Math.max(from, 0), minBucket);
+        if (pg < 0 && from > 0)
+            pg = nextPage(0, minBucket);
+        return pg;
+    }
+
+    /** @return a page in bucket minBucket or above, or -1 */
+    public synchronized int findPageWithBucket(int minBucket) {
+        int pg = findPageWithBucket(m_hint, minBucket);
+        if (pg >= 0)
+            m_hint = pg;
+        return pg;
+    }
+
+    /** @return the first page at or after from in bucket minBucket or above, or -1 */
+    private int nextPage(int from, int minBucket) {
+        if (minBucket <= 1)
+            return m_hasRoom.nextSetBit(from);
+        int best = -1;
+        for (int b = minBucket; b < BUCKETS; b++) {
+            int pg = m_inBucket[b].nextSetBit(from);
+            if (pg >= 0 && (best < 0 || pg < best))
+                best = pg;
+        }
+        return best;
+    }
+
+    /** Put page pgNo, which is in no bucket's bitmap, into bucket b's. */
+    private void place(int pgNo, int b) {
+        if (b == 0)
+            return;
+        m_hasRoom.set(pgNo);
+        m_inBucket[b].set(pgNo);
+    }
+
+    /**
+     * Record that page pgNo has free of total slots free, growing the map
+     * if the page is new, and persist the page's bucket if it changed.
+     */
+    public synchronized void update(int pgNo, int free, int total) throws IOException {
+        byte b = (byte) bucket(free, total);
+        if (pgNo >= m_buckets.length)
+            m_buckets = java.util.Arrays.copyOf(m_buckets, Math.max(pgNo + 1, m_buckets.length * 2));
+        boolean grown = pgNo >= m_numPages;
+        for (int pg = m_numPages; pg < pgNo; pg++) { // pages added behind our back have unknown fill
+            m_buckets[pg] = (byte) (BUCKETS - 1);
+            place(pg, BUCKETS - 1);
+        }
+        m_numPages = Math.max(m_numPages, pgNo + 1);
+        if (!grown && m_buckets[pgNo] == b)
+            return;
+        if (!grown && m_buckets[pgNo] != 0) {
+            m_hasRoom.clear(pgNo);
+            m_inBucket[m_buckets[pgNo]].clear(pgNo);
+        }
+        m_buckets[pgNo] = b;
+        place(pgNo, b);
+        write(pgNo, b);
+    }
+
+    private void write(int pgNo, byte b) throws IOException {
+        boolean opened = m_handle == null;
+        if (opened)
+            m_handle = Database.getChannelCache().open(m_file);
+        FileChannel fc = m_handle.acquire();
+        try {
+            if (opened)
+                m_length = (int) Math.min(Integer.MAX_VALUE, fc.size());
+            if (pgNo > m_length) {
+                // fill the gap with what we know rather than leave zeroes, which read as full
+                ByteBuffer gap = ByteBuffer.wrap(m_buckets, m_length, pgNo + 1 - m_length);
+                while (gap.hasRemaining())
+                    fc.write(gap, gap.position()); // bucket i lives at offset i
+            } else {
+                m_one.clear();
+                m_one.put(b);
+                m_one.flip();
+                fc.write(m_one, pgNo);
+            }
+        } finally {
+            m_handle.release();
+        }
+        m_length = Math.max(m_length, pgNo + 1);
+    }
+
+    /** Close the side file; it is reopened by the next update. */
+    public synchronized void close() throws IOException {
+        if (m_handle != null)
+            m_handle.close();
+    }
+}
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
 
@@ -10,18 +11,57 @@ import java.util.*;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor; a table may instead use another {@link PageFormat}, such as
+ * the variable-length records of {@link SlottedPage} or the field-by-field
+ * layout of {@link PaxPage}.
+ * <p>
+ * The file grows by extents rather than a page at a time, and keeps the
+ * number of pages in use in a small side file; see {@link #numPages}.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+	/** Bytes mapped per segment in memory-mapped mode; a multiple of the page size. */
+	public static final int MAP_SEGMENT_BYTES = 64 << 20;
 	
 	private File m_file;
 	private TupleDesc m_td;
-	private FileChannel m_fc;
-	private LinkedList<PageId> m_freePgIds;
+	private final ChannelCache.Handle m_handle; //the file, opened on first use
+	private FreeSpaceMap m_fsm; //fill of each page, loaded on first use
+	private final Object m_appendLock = new Object(); //serializes growing the file
+	
+	/** Pages packed in memory for each sequential write of a bulk insert. */
+	public static final int BULK_WRITE_PAGES = 64;
+	private final boolean m_mapped; //read pages through m_segments instead of the channel
+	private final PageFormat m_format;
+	private final int m_pageSize; //bytes per page
+	private MappedByteBuffer[] m_segments; //read-only mappings of the file, guarded by this
+	private long m_mappedBytes; //bytes of the file covered by m_segments, guarded by this
+	
+	/** Pages in the first extent by which a file grows by default; later extents double with the file. */
+	public static final int DEFAULT_MIN_EXTENT_PAGES = 8;
+	/** Bytes of the largest extent by which a file grows by default. */
+	public static final int DEFAULT_MAX_EXTENT_BYTES = 16 << 20;
+	/** System property giving the bytes of the first extent of the files created after it is set. */
+	public static final String MIN_EXTENT_PROPERTY = "simpledb.minExtentBytes";
+	/** System property giving the bytes of the largest extent of the files created after it is set. */
+	public static final String MAX_EXTENT_PROPERTY = "simpledb.maxExtentBytes";
+	/**
+	 * Suffix of the side file, appended to the table file name, holding the
+	 * number of pages in use followed by the size of the file when it was
+	 * written.
+	 */
+	public static final String END_SUFFIX = ".end";
+	private static final ByteBuffer ZEROES = ByteBuffer.allocateDirect(256 << 10); //never written; duplicated per use
+	private final Object m_extentLock = new Object(); //guards the fields below; taken after m_appendLock and page latches
+	private volatile long m_allocatedBytes = -1; //size of the file, data and preallocated zeroes; -1 until first needed
+	private volatile int m_endPage = -1; //pages in use; the rest of the file is preallocated
+	private ChannelCache.Handle m_endHandle; //the side file, once the file is first extended
+	private final long m_minExtent; //bytes of the first extent, whole pages
+	private final long m_maxExtent; //bytes of the largest extent, whole pages, at least m_minExtent
+	
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -30,18 +70,83 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+    	this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file.
+     * <p>
+     * In memory-mapped mode, pages are read through read-only mappings of
+     * the file: a page read needs no system call, and the page views the
+     * mapping until it is first modified (see {@link HeapPage}). Writes
+     * still go through the file channel, and the OS page cache keeps the
+     * two consistent. The file is remapped when it grows.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     * @param mapped whether to read pages through memory mappings
+     */
+    public HeapFile(File f, TupleDesc td, boolean mapped) {
+    	this(f, td, mapped, PageFormat.FIXED);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * in the given format.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     * @param mapped whether to read pages through memory mappings
+     * @param format the layout of the pages of the file
+     */
+    public HeapFile(File f, TupleDesc td, boolean mapped, PageFormat format) {
+    	this(f, td, mapped, format, BufferPool.getPageSize());
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * in the given format and of the given size.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     * @param mapped whether to read pages through memory mappings
+     * @param format the layout of the pages of the file
+     * @param pageSize bytes per page; a power of two if mapped, so that
+     *   pages do not straddle mappings, and at most
+     *   {@link PageFormat#getMaxPageSize}
+     */
+    public HeapFile(File f, TupleDesc td, boolean mapped, PageFormat format, int pageSize) {
         // some code goes here
+    	if(pageSize<=0 || (mapped && Integer.bitCount(pageSize)!=1) || pageSize>format.getMaxPageSize())
+    		throw new IllegalArgumentException("bad page size " + pageSize + " for " + format + " pages");
     	m_file = f;
+    	m_pageSize = pageSize;
     	m_td = td;
-    	m_freePgIds = new LinkedList<PageId>();
-        try {
-            RandomAccessFile raf = new RandomAccessFile(f, "rw");
-            m_fc = raf.getChannel();                       
-        } catch(IOException e) {
-            System.err.println("error creating a channel");
-            System.exit(1);
-        }
-        
+    	m_mapped = mapped;
+    	m_format = format;
+    	m_segments = new MappedByteBuffer[0];
+    	m_mappedBytes = 0;
+    	m_handle = Database.getChannelCache().open(f); //nothing is opened until the table is used
+    	m_minExtent = wholePages(Long.getLong(MIN_EXTENT_PROPERTY, (long) DEFAULT_MIN_EXTENT_PAGES * pageSize));
+    	m_maxExtent = Math.max(m_minExtent, wholePages(Long.getLong(MAX_EXTENT_PROPERTY, DEFAULT_MAX_EXTENT_BYTES)));
+    }
+    
+    /** @return bytes rounded down to whole pages, but at least one page */
+    private long wholePages(long bytes) {
+    	return Math.max(m_pageSize, bytes / m_pageSize * m_pageSize);
+    }
+    
+    /**
+     * @return the bytes of the first extent by which the file grows, see
+     *   {@link #MIN_EXTENT_PROPERTY}
+     */
+    public long getMinExtentBytes() {
+    	return m_minExtent;
+    }
+    
+    /**
+     * @return the bytes of the largest extent by which the file grows, see
+     *   {@link #MAX_EXTENT_PROPERTY}
+     */
+    public long getMaxExtentBytes() {
+    	return m_maxExtent;
     }
 
     /**
@@ -78,21 +183,52 @@ public class HeapFile implements DbFile {
         return m_td;
     }
 
+    // see DbFile.java for javadocs
+    public int getPageSize() {
+    	return m_pageSize;
+    }
+
+    /**
+     * @return the layout of the pages of this file
+     */
+    public PageFormat getPageFormat() {
+    	return m_format;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) throws IllegalArgumentException {
         // some code goes here
+        return readPage(pid, ByteBuffer.allocate(m_pageSize));
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid, ByteBuffer frame) throws IllegalArgumentException {
     	int pgNum = pid.pageNumber();
-        int offset = BufferPool.PAGE_SIZE * pgNum;
+        long offset = (long) m_pageSize * pgNum; //tables may outgrow 2GB
+        if(frame.capacity()<m_pageSize) //a frame sized for another table's pages
+        	frame = ByteBuffer.allocate(m_pageSize);
         
         if(pgNum>=numPages()) { //page number is out of range
     		throw new IllegalArgumentException();
     	}
         
         try {
-        	ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
-            m_fc.read(buffer, offset);
+        	if(m_mapped) {
+        		ByteBuffer mapped = mappedPage(offset);
+        		if(frame.isDirect()) { //an arena frame; copy out of the page cache without a system call
+        			ByteBuffer dst = frame.duplicate();
+        			dst.clear();
+        			dst.put(mapped);
+        			return m_format.newPage((HeapPageId) pid, frame);
+        		}
+        		return m_format.newPage((HeapPageId) pid, mapped);
+        	}
+        	ByteBuffer buffer = frame.duplicate(); //read straight into the frame
+        	buffer.clear();
+        	buffer.limit(m_pageSize);
+        	readImage(pgNum, buffer);
             HeapPageId hpid = (HeapPageId) pid;
-            return new HeapPage(hpid, buffer.array());
+            return m_format.newPage(hpid, frame);
         } catch (IOException e) {
             System.err.println("error reading a page");
             System.exit(1);
@@ -100,25 +236,275 @@ public class HeapFile implements DbFile {
         return null;
     }
 
+    /**
+     * Read the image of page pgNo into dst, from its position up to its
+     * limit. Subclasses that store pages differently override this together
+     * with {@link #writeImage}, {@link #writeImages}, {@link #force} and
+     * {@link #numPages}.
+     */
+    protected void readImage(int pgNo, ByteBuffer dst) throws IOException {
+    	long offset = (long) m_pageSize * pgNo - dst.position();
+    	FileChannel fc = m_handle.acquire();
+    	try {
+    		while(dst.hasRemaining() && fc.read(dst, offset + dst.position()) >= 0) {
+    			//short reads happen on some channels; keep going until the page is full
+    		}
+    	} finally {
+    		m_handle.release();
+    	}
+    }
+    
+    /**
+     * Write image, which holds the image of page pgNo from its position to
+     * its limit, to the file.
+     */
+    protected void writeImage(int pgNo, ByteBuffer image) throws IOException {
+    	writeImages(pgNo, image);
+    }
+    
+    /**
+     * Write the images of consecutive pages, starting with page firstPgNo,
+     * which images holds back to back from its position to its limit.
+     * Writes past the last page in use extend the file, see
+     * {@link #numPages}.
+     */
+    protected void writeImages(int firstPgNo, ByteBuffer images) throws IOException {
+    	int lastPgNo = firstPgNo + (images.remaining() + m_pageSize - 1) / m_pageSize;
+    	if((long) m_pageSize * lastPgNo > m_allocatedBytes)
+    		reserve((long) m_pageSize * lastPgNo);
+    	long offset = (long) m_pageSize * firstPgNo - images.position();
+    	FileChannel fc = m_handle.acquire();
+    	try {
+    		while(images.hasRemaining())
+    			fc.write(images, offset + images.position());
+    	} finally {
+    		m_handle.release();
+    	}
+    	if(lastPgNo > m_endPage)
+    		setEnd(lastPgNo);
+    }
+    
+    /**
+     * Force the pages written so far to disk.
+     */
+    protected void force() throws IOException {
+    	force(m_handle);
+    	synchronized(m_extentLock) {
+    		if(m_endHandle!=null)
+    			force(m_endHandle);
+    	}
+    }
+    
+    /**
+     * Force the writes to the file of h to disk, including those made
+     * through channels the cache has closed since.
+     */
+    protected static void force(ChannelCache.Handle h) throws IOException {
+    	FileChannel fc = h.acquire();
+    	try {
+    		fc.force(false);
+    	} finally {
+    		h.release();
+    	}
+    }
+    
+    /**
+     * Load the number of pages in use: the count in the side file, or every
+     * page of the file if it was never extended by an extent. A side file
+     * that gives another size than the file's is left over from before a
+     * crash or from an older file of the same name, and is ignored;
+     * counting preallocated pages as in use only adds empty pages.
+     * Called with m_extentLock held.
+     */
+    private void loadEnd() throws IOException {
+    	if(m_allocatedBytes>=0)
+    		return;
+    	long size;
+    	FileChannel fc = m_handle.acquire();
+    	try {
+    		size = fc.size();
+    	} finally {
+    		m_handle.release();
+    	}
+    	int end = (int) (size / m_pageSize);
+    	File side = new File(m_file.getPath() + END_SUFFIX);
+    	if(side.exists()) {
+    		m_endHandle = Database.getChannelCache().open(side);
+    		ByteBuffer record = ByteBuffer.allocate(12);
+    		FileChannel endFc = m_endHandle.acquire();
+    		try {
+    			while(record.hasRemaining() && endFc.read(record, record.position()) >= 0) {
+    			}
+    		} finally {
+    			m_endHandle.release();
+    		}
+    		if(!record.hasRemaining() && record.getLong(4)==size)
+    			end = Math.min(end, record.getInt(0));
+    	}
+    	m_allocatedBytes = size;
+    	m_endPage = end;
+    }
+    
+    /**
+     * Make sure the file has room for its first bytes bytes, which the
+     * caller is about to write up to, growing it by an extent if it does
+     * not. The first extent is a few pages, {@link #getMinExtentBytes}, and
+     * later ones are as large as the file up to {@link #getMaxExtentBytes},
+     * so a small table stays small while one that keeps growing extends its
+     * file once per extent rather than once per page.
+     * <p>
+     * The part of the extent past bytes is filled with zeroes here; the
+     * caller writes the rest. The zeroes are written synchronously with
+     * m_extentLock held, so every writer that needs to grow the file waits
+     * for the whole extent; the largest extent bounds that wait.
+     */
+    private void reserve(long bytes) throws IOException {
+    	synchronized(m_extentLock) {
+    		loadEnd();
+    		if(bytes<=m_allocatedBytes)
+    			return;
+    		long extent = wholePages(Math.min(Math.max(m_allocatedBytes, m_minExtent), m_maxExtent));
+    		long size = Math.max(m_allocatedBytes, bytes) + extent;
+    		FileChannel fc = m_handle.acquire();
+    		try {
+    			for(long pos=bytes; pos<size; ) {
+    				ByteBuffer zeroes = ZEROES.duplicate();
+    				zeroes.limit((int) Math.min(zeroes.capacity(), size - pos));
+    				pos += fc.write(zeroes, pos);
+    			}
+    		} finally {
+    			m_handle.release();
+    		}
+    		m_allocatedBytes = size;
+    		writeEnd();
+    	}
+    }
+    
+    /**
+     * Record that the first pages pages of the file are in use, if fewer
+     * were before.
+     */
+    private void setEnd(int pages) throws IOException {
+    	synchronized(m_extentLock) {
+    		loadEnd();
+    		if(pages<=m_endPage)
+    			return;
+    		m_endPage = pages;
+    		if(m_endHandle!=null) //otherwise no pages are preallocated, and the size of the file says it all
+    			writeEnd();
+    	}
+    }
+    
+    /**
+     * Write the number of pages in use and the size of the file to the side
+     * file, creating it if needed. Called with m_extentLock held.
+     */
+    private void writeEnd() throws IOException {
+    	if(m_endHandle==null)
+    		m_endHandle = Database.getChannelCache().open(new File(m_file.getPath() + END_SUFFIX));
+    	ByteBuffer record = ByteBuffer.allocate(12);
+    	record.putInt(0, m_endPage);
+    	record.putLong(4, m_allocatedBytes);
+    	FileChannel fc = m_endHandle.acquire();
+    	try {
+    		while(record.hasRemaining())
+    			fc.write(record, record.position());
+    	} finally {
+    		m_endHandle.release();
+    	}
+    }
+    
+    /**
+     * @return the handle through which the file backing this HeapFile is
+     *   opened; see {@link ChannelCache}
+     */
+    protected ChannelCache.Handle getHandle() {
+    	return m_handle;
+    }
+
+    /**
+     * @return the free space map of this file, loading it from its side
+     *   file on first use
+     */
+    public synchronized FreeSpaceMap freeSpace() {
+    	if(m_fsm==null)
+    		m_fsm = new FreeSpaceMap(m_file, numPages());
+    	return m_fsm;
+    }
+    
+    /**
+     * @return whether this file reads pages through memory mappings
+     */
+    public boolean isMapped() {
+    	return m_mapped;
+    }
+    
+    /**
+     * Return a read-only view of the page at offset, mapping the parts of
+     * the file that were added since it was last mapped.
+     */
+    private synchronized ByteBuffer mappedPage(long offset) throws IOException {
+    	if(offset + m_pageSize > m_mappedBytes)
+    		remap();
+    	int seg = (int) (offset / MAP_SEGMENT_BYTES);
+    	ByteBuffer page = m_segments[seg].duplicate();
+    	int pos = (int) (offset % MAP_SEGMENT_BYTES);
+    	page.limit(pos + m_pageSize);
+    	page.position(pos);
+    	return page.slice();
+    }
+    
+    /**
+     * Extend the mappings to the current end of the file. Full segments are
+     * kept; the last, partial one is mapped again at its new length.
+     */
+    private void remap() throws IOException {
+    	FileChannel fc = m_handle.acquire(); //mappings outlive the channel
+    	long size;
+    	MappedByteBuffer[] segments;
+    	try {
+    		size = fc.size();
+    		int full = (int) (m_mappedBytes / MAP_SEGMENT_BYTES); //segments that needn't change
+    		int count = (int) ((size + MAP_SEGMENT_BYTES - 1) / MAP_SEGMENT_BYTES);
+    		segments = Arrays.copyOf(m_segments, count);
+    		for(int i=full; i<count; i++) {
+    			long start = (long) i * MAP_SEGMENT_BYTES;
+    			segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_SEGMENT_BYTES, size - start));
+    		}
+    	} finally {
+    		m_handle.release();
+    	}
+    	m_segments = segments;
+    	m_mappedBytes = size;
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
     	int pgNum = page.getId().pageNumber();
-    	int offset = BufferPool.PAGE_SIZE * pgNum;
     	
-    	ByteBuffer buffer = ByteBuffer.wrap(page.getPageData());
-    	m_fc.write(buffer, offset);
+    	ByteBuffer buffer = page instanceof FramedPage
+    		? ((FramedPage) page).getPageImage() //write the image in place, no serialization
+    		: ByteBuffer.wrap(page.getPageData());
+    	writeImage(pgNum, buffer);
     }
 
     /**
-     * Returns the number of pages in this HeapFile.
+     * Returns the number of pages in this HeapFile. The file grows by
+     * extents, so it may be longer than that; the pages past the last one
+     * in use are zeroes, which is an empty page in every format.
      */
     public int numPages() {
         // some code goes here
-    	int res = 0;
+    	int res = m_endPage;
+    	if(res>=0)
+    		return res;
         try {
-            res = (int) Math.ceil(this.m_fc.size() / BufferPool.PAGE_SIZE);            
+        	synchronized(m_extentLock) {
+        		loadEnd();
+        		res = m_endPage;
+        	}
         } catch (IOException e) {
             System.err.println("error counting the number of pages");
             System.exit(1);
@@ -127,33 +513,53 @@ public class HeapFile implements DbFile {
         return res;
     }
     
-    public HeapPageId findNextFreePageId(TransactionId tid)
+    public HeapPageId findNextFreePageId(TransactionId tid, Tuple t)
     	throws DbException, IOException, TransactionAbortedException { //grab a next free page using buffer pool
     	
-    	for(PageId pid: m_freePgIds) { //look for free page id remembered by the heap file object
-    		return (HeapPageId)pid;
-    	}
-    	
-    	//the heap file object does not remember any free page ids
-    	for(int i=0; i<numPages(); i++) { //for each page in the file
+    	//ask the free space map, and check each page it suggests
+    	BufferPool bp = Database.getBufferPool();
+    	FreeSpaceMap fsm = freeSpace();
+    	int numPages = numPages();
+    	int needed = m_format.spaceNeeded(t);
+    	int capacity = m_format.capacity(m_td, m_pageSize);
+    	int minBucket = FreeSpaceMap.bucketWithRoom(needed, capacity);
+    	int first = fsm.findPageWithBucket(minBucket);
+    	boolean wrapped = false;
+    	for(int i=first; i>=0 && i<numPages; ) {
     		PageId tempPid = new HeapPageId(getId(), i);
-    		HeapPage tempPg = (HeapPage) Database.getBufferPool().getPage(tid, tempPid, Permissions.READ_WRITE);
-    		if(tempPg.getNumEmptySlots()>0) {
+    		boolean wasLocked = bp.holdsLock(tid, tempPid);
+    		//only look with a shared lock; insertTuple upgrades it on the page it picks
+    		TuplePage tempPg = (TuplePage) bp.getPage(tid, tempPid, Permissions.READ_ONLY);
+    		if(tempPg.getFreeSpace()>=needed) {
     			//System.out.println("found free pg :"+tempPg.getId().pageNumber()+";"+i+" - " + tempPg.getNumEmptySlots()+"/"+tempPg.getNumSlots() );
-    			PageId targetPid = tempPg.getId();
     			return tempPg.getId();
     		}
+    		fsm.update(i, tempPg.getFreeSpace(), capacity); //the map was stale, or the page is too full for tuples like t
+    		if(!wasLocked) //we never read anything from a full page, so 2PL allows letting go of it
+    			bp.releasePage(tid, tempPid);
+    		
+    		//a page whose real bucket still looks big enough comes round again, so stop after one lap
+    		int next = fsm.findPageWithBucket(i+1, minBucket);
+    		wrapped |= next<=i;
+    		if(wrapped && next>=first)
+    			break;
+    		i = next;
     	}
     	
     	return null;
     }
     
     public HeapPageId allocateNewPage() throws IOException { //allocate a new page and return the id
+    	synchronized(m_appendLock) {
+    		return allocatePage();
+    	}
+    }
+    
+    private HeapPageId allocatePage() throws IOException {
     	HeapPageId newPid = new HeapPageId(getId(), numPages());
     	try {
-    		HeapPage newPg = new HeapPage(newPid, HeapPage.createEmptyPageData());
-    		writePage(newPg);
-    		return newPg.getId();
+    		writePage(emptyPage(newPid));
+    		return newPid;
     	} catch(IOException i) {
     		System.err.println("error allocating a heap page");
     		System.exit(1);
@@ -180,17 +586,17 @@ public class HeapFile implements DbFile {
     		
     	*/
     	
-    	HeapPageId nextFreePgId = findNextFreePageId(tid);
+    	HeapPageId nextFreePgId = findNextFreePageId(tid, t);
     	if(nextFreePgId == null) {
     		nextFreePgId = allocateNewPage();
     	}
     	
-    	HeapPage nextFreePg = (HeapPage)Database.getBufferPool().getPage(tid, nextFreePgId, Permissions.READ_WRITE);
-    	nextFreePg.insertTuple(t);
-    	if(nextFreePg.getNumEmptySlots() == 0) {
-    		m_freePgIds.remove(nextFreePgId);
+    	TuplePage nextFreePg = (TuplePage)Database.getBufferPool().getPage(tid, nextFreePgId, Permissions.READ_WRITE);
+    	synchronized(nextFreePg) { //page latch, see BufferPool.flushPages
+    		nextFreePg.insertTuple(t);
+    		nextFreePg.markDirty(true, tid);
     	}
-    	nextFreePg.markDirty(true, tid);
+    	freeSpace().update(nextFreePgId.pageNumber(), nextFreePg.getFreeSpace(), m_format.capacity(m_td, m_pageSize));
     	//the page is modified, but the modification is only stored in buffer pool
     	
     	ArrayList<Page> result = new ArrayList<Page>();
@@ -199,18 +605,146 @@ public class HeapFile implements DbFile {
     	
     }
 
+    /**
+     * Pages are packed in memory and appended {@link #BULK_WRITE_PAGES} at a
+     * time with one sequential write. Each batch is packed before it is
+     * given page numbers: the numbers are taken at the end of the file
+     * under the append lock, like {@link #allocateNewPage} does, and the
+     * pages are locked after the append lock is let go, so that a wait for
+     * a page lock never holds up other appends.
+     * <p>
+     * If the file was empty, nobody can see its previous contents, so the
+     * pages are not logged: an EXTEND record names each batch before it is
+     * written, which is all recovery needs to empty the pages again if tid
+     * never commits, and the file is forced before returning. Otherwise an
+     * UPDATE record is logged for each page, with the empty page as its
+     * before image. Either way the log is forced before each write.
+     *
+     * @see DbFile#bulkInsert
+     * @see LogFile#logExtend
+     */
+    public int bulkInsert(TransactionId tid, Iterator<Tuple> tuples)
+    		throws DbException, IOException, TransactionAbortedException {
+    	BufferPool bp = Database.getBufferPool();
+    	boolean logged = true;
+    	int count = 0;
+    	Tuple t = tuples.hasNext() ? tuples.next() : null;
+    	while(t!=null) {
+    		//pack a batch, numbering its pages from 0 until they are allocated
+    		ArrayList<TuplePage> packedPages = new ArrayList<TuplePage>(BULK_WRITE_PAGES);
+    		ArrayList<Tuple> packed = new ArrayList<Tuple>();
+    		TuplePage page = null;
+    		for(; t!=null; t = tuples.hasNext() ? tuples.next() : null) {
+    			if(page==null || page.getFreeSpace()<m_format.spaceNeeded(t)) {
+    				if(packedPages.size()==BULK_WRITE_PAGES)
+    					break;
+    				page = emptyPage(new HeapPageId(getId(), packedPages.size()));
+    				packedPages.add(page);
+    			}
+    			page.insertTuple(t);
+    			packed.add(t);
+    		}
+    		
+    		int first;
+    		synchronized(m_appendLock) {
+    			first = allocatePages(packedPages.size());
+    		}
+    		if(count==0)
+    			logged = first > 0;
+    		ArrayList<TuplePage> batch = new ArrayList<TuplePage>(packedPages.size());
+    		for(int i=0; i<packedPages.size(); i++) {
+    			HeapPageId pid = new HeapPageId(getId(), first + i);
+    			bp.getLockManager().acquire(tid, pid, Permissions.READ_WRITE);
+    			bp.discardPage(pid); //someone may have read it empty in the meantime
+    			batch.add(m_format.newPage(pid, ((FramedPage) packedPages.get(i)).getPageImage()));
+    		}
+    		for(Tuple p: packed) {
+    			RecordId rid = p.getRecordId();
+    			p.setRecordId(new RecordId(new HeapPageId(getId(), first + rid.getPageId().pageNumber()), rid.tupleno()));
+    		}
+    		appendPages(tid, batch, logged);
+    		count += packed.size();
+    	}
+    	if(!logged)
+    		force(); //no log record can redo these pages
+    	return count;
+    }
+    
+    /**
+     * Add n empty pages at the end of the file and return the number of the
+     * first. The free space map lists them as full, so that inserts leave
+     * them to the caller. Called with m_appendLock held.
+     */
+    private int allocatePages(int n) throws IOException {
+    	int first = numPages();
+    	writeImages(first, ByteBuffer.allocate(n * m_pageSize));
+    	int capacity = m_format.capacity(m_td, m_pageSize);
+    	for(int i=0; i<n; i++)
+    		freeSpace().update(first + i, 0, capacity);
+    	return first;
+    }
+    
+    /** Write a batch of consecutive new pages, allocated by allocatePages and locked by tid. */
+    private void appendPages(TransactionId tid, List<TuplePage> batch, boolean logged) throws IOException {
+    	BufferPool bp = Database.getBufferPool();
+    	LogFile log = Database.getLogFile();
+    	int first = batch.get(0).getId().pageNumber();
+    	ByteBuffer out = ByteBuffer.allocate(batch.size() * m_pageSize);
+    	if(!logged)
+    		log.logExtend(tid, getId(), first, batch.size());
+    	for(TuplePage p: batch) {
+    		TuplePage before = emptyPage(p.getId());
+    		bp.pageWrittenDirectly(tid, before); //an abort empties the page again
+    		if(logged)
+    			log.logWrite(tid, before, p);
+    		out.put(((FramedPage) p).getPageImage());
+    	}
+    	log.force();
+    	
+    	out.flip();
+    	writeImages(first, out);
+    	for(TuplePage p: batch)
+    		freeSpace().update(p.getId().pageNumber(), p.getFreeSpace(), m_format.capacity(m_td, m_pageSize));
+    }
+    
+    /**
+     * Empty count pages from page first on, and drop them from the buffer
+     * pool. Recovery calls this to undo a bulk load that was not logged
+     * page by page, see {@link LogFile#logExtend}.
+     */
+    public void emptyPages(int first, int count) throws IOException {
+    	BufferPool bp = Database.getBufferPool();
+    	int capacity = m_format.capacity(m_td, m_pageSize);
+    	for(int i=0; i<count; i++)
+    		bp.discardPage(new HeapPageId(getId(), first + i));
+    	writeImages(first, ByteBuffer.allocate(count * m_pageSize));
+    	force();
+    	for(int i=0; i<count; i++)
+    		freeSpace().update(first + i, capacity, capacity);
+    }
+    
+    /** @return a new, empty page of this file's format */
+    private TuplePage emptyPage(HeapPageId pid) throws IOException {
+    	return m_format.newPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData(m_pageSize)));
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
     	PageId targetPid = t.getRecordId().getPageId();
-    	HeapPage targetPg = (HeapPage) Database.getBufferPool().getPage(tid, targetPid, Permissions.READ_WRITE);
-    	targetPg.deleteTuple(t);
-    	targetPg.markDirty(true, tid);
+    	TuplePage targetPg = (TuplePage) Database.getBufferPool().getPage(tid, targetPid, Permissions.READ_WRITE);
+    	synchronized(targetPg) { //page latch, see BufferPool.flushPages
+    		targetPg.deleteTuple(t);
+    		targetPg.markDirty(true, tid);
+    	}
     	
-    	m_freePgIds.add(targetPid); //add this page to the free page list
-    								//since after deletion, there will be at least one open slot
+    	try {
+    		freeSpace().update(targetPid.pageNumber(), targetPg.getFreeSpace(), m_format.capacity(m_td, m_pageSize));
+    	} catch(IOException e) {
+    		throw new DbException("could not update the free space map of " + m_file);
+    	}
     	
     	ArrayList<Page> result = new ArrayList<Page>();
     	result.add(targetPg);
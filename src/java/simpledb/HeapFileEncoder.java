@@ -1,7 +1,13 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.*;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -9,10 +15,21 @@ import java.util.ArrayList;
  * pages of binary data in the appropriate format for simpledb heap pages
  * Pages are padded out to a specified length, and written consecutive in a
  * data file.
+ * <p>
+ * Text files are split into byte ranges that end on line boundaries; the
+ * ranges are parsed and encoded on worker threads and the resulting records
+ * are packed into pages and written in input order.
  */
 
 public class HeapFileEncoder {
 
+  /** System property holding the number of threads used to parse text
+   * input; defaults to the number of available processors. */
+  public static final String THREADS_PROPERTY = "simpledb.convert.threads";
+
+  /** Default size in bytes of the ranges handed to each worker */
+  static final int CHUNK_BYTES = 4 << 20;
+
   /** Convert the specified tuple list (with only integer fields) into a binary
    * page file. <br>
    *
@@ -26,38 +43,33 @@ public class HeapFileEncoder {
    * @param outFile The output file to write data to
    * @param npagebytes The number of bytes per page in the output file
    * @param numFields the number of fields in each input tuple
-   * @throws IOException if the temporary/output file can't be opened
+   * @throws IOException if the output file can't be opened
    */
   public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int npagebytes, int numFields) throws IOException {
-      File tempInput = File.createTempFile("tempTable", ".txt");
-      tempInput.deleteOnExit();
-      BufferedWriter bw = new BufferedWriter(new FileWriter(tempInput));
-      for (ArrayList<Integer> tuple : tuples) {
-          int writtenFields = 0;
-          for (Integer field : tuple) {
-              writtenFields++;
-              if (writtenFields > numFields) {
-                  throw new RuntimeException("Tuple has more than " + numFields + " fields: (" +
+      Type[] ts = intTypes(numFields);
+      PageBuilder pages = new PageBuilder(outFile, npagebytes, ts);
+      try {
+          byte[] rec = new byte[pages.recordSize()];
+          ByteBuffer buf = ByteBuffer.wrap(rec);
+          for (ArrayList<Integer> tuple : tuples) {
+              if (tuple.size() != numFields) {
+                  throw new RuntimeException("Tuple does not have " + numFields + " fields: (" +
                           Utility.listToString(tuple) + ")");
               }
-              bw.write(String.valueOf(field));
-              if (writtenFields < numFields) {
-                  bw.write(',');
-              }
+              buf.clear();
+              for (Integer field : tuple)
+                  buf.putInt(field);
+              pages.add(rec, 0);
           }
-          bw.write('\n');
+          pages.finish();
+      } finally {
+          pages.close();
       }
-      bw.close();
-      convert(tempInput, outFile, npagebytes, numFields);
   }
 
       public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields) throws IOException {
-      Type[] ts = new Type[numFields];
-      for (int i = 0; i < ts.length; i++) {
-          ts[i] = Type.INT_TYPE;
-      }
-      convert(inFile,outFile,npagebytes,numFields,ts);
+      convert(inFile,outFile,npagebytes,numFields,intTypes(numFields));
       }
 
   public static void convert(File inFile, File outFile, int npagebytes,
@@ -90,137 +102,316 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator,
+              Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /** Convert the specified input text file into a binary page file using
+   * the given number of parser threads.
+   *
+   * @see #convert(File, File, int, int, Type[], char)
+   * @param nthreads the number of threads parsing the input
+   */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator, int nthreads)
+      throws IOException {
+      convert(inFile, outFile, npagebytes, Arrays.copyOf(typeAr, numFields),
+              fieldSeparator, Math.max(1, nthreads), CHUNK_BYTES);
+  }
+
+  static void convert(File inFile, File outFile, int npagebytes, Type[] typeAr,
+                 char fieldSeparator, int nthreads, int chunkBytes)
+      throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(inFile, "r");
+      FileChannel in = raf.getChannel();
+      PageBuilder pages = new PageBuilder(outFile, npagebytes, typeAr);
+      ExecutorService workers = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "HeapFileEncoder");
+              t.setDaemon(true);
+              return t;
+          }
+      });
+      try {
+          long length = in.size();
+          // keep a bounded number of ranges in memory at once
+          LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+          long start = 0;
+          while (start < length || !pending.isEmpty()) {
+              while (start < length && pending.size() < nthreads * 2) {
+                  long end = Math.min(length, start + chunkBytes);
+                  pending.add(workers.submit(new RangeParser(in, start, end, length, typeAr,
+                          fieldSeparator, pages.recordSize())));
+                  start = end;
+              }
+              Chunk chunk = await(pending.removeFirst());
+              for (int i = 0; i < chunk.records; i++)
+                  pages.add(chunk.data, i * pages.recordSize());
+          }
+          pages.finish();
+      } finally {
+          // never interrupt the workers; that would close the shared channel
+          workers.shutdown();
+          pages.close();
+          raf.close();
+      }
+  }
+
+  private static Type[] intTypes(int numFields) {
+      Type[] ts = new Type[numFields];
+      for (int i = 0; i < ts.length; i++) {
+          ts[i] = Type.INT_TYPE;
+      }
+      return ts;
+  }
+
+  private static Chunk await(Future<Chunk> f) throws IOException {
+      boolean interrupted = false;
+      try {
+          while (true) {
+              try {
+                  return f.get();
+              } catch (InterruptedException e) {
+                  interrupted = true;
+              } catch (ExecutionException e) {
+                  Throwable cause = e.getCause();
+                  if (cause instanceof IOException)
+                      throw (IOException)cause;
+                  if (cause instanceof RuntimeException)
+                      throw (RuntimeException)cause;
+                  throw new RuntimeException(cause);
+              }
+          }
+      } finally {
+          if (interrupted)
+              Thread.currentThread().interrupt();
+      }
+  }
+
+  /** The encoded records of one byte range of the input */
+  private static class Chunk {
+      byte[] data;
+      int records;
+  }
+
+  /**
+   * Parses the lines that start inside [start, end) of the input; the last
+   * line may run past end.  Empty lines and carriage returns are ignored.
+   */
+  private static class RangeParser implements Callable<Chunk> {
+      private static final int BLOCK_BYTES = 64 << 10;
+
+      private final FileChannel m_in;
+      private final long m_start;
+      private final long m_end;
+      private final long m_length;
+      private final Type[] m_types;
+      private final byte m_sep;
+      private final int m_recordSize;
+
+      private final ByteBuffer m_block = ByteBuffer.allocate(BLOCK_BYTES);
+      private long m_pos;
+      private byte[] m_field = new byte[64];
+      private Chunk m_out = new Chunk();
+
+      RangeParser(FileChannel in, long start, long end, long length, Type[] types,
+                  char sep, int recordSize) {
+          m_in = in;
+          m_start = start;
+          m_end = end;
+          m_length = length;
+          m_types = types;
+          m_sep = (byte)sep;
+          m_recordSize = recordSize;
+      }
+
+      public Chunk call() throws IOException {
+          long expected = (m_end - m_start) / (m_recordSize + 1) + 1;
+          m_out.data = new byte[(int)Math.min(expected * m_recordSize, CHUNK_BYTES)];
+          m_block.limit(0);
+          m_pos = m_start;
+          if (m_start > 0) {
+              // the line running through start belongs to the previous range
+              m_pos = m_start - 1;
+              int c;
+              do {
+                  c = read();
+              } while (c != '\n' && c != -1);
+          }
+          while (position() < m_end && parseLine())
+              ;
+          return m_out;
+      }
+
+      /** Offset in the file of the next byte read() returns */
+      private long position() {
+          return m_pos - m_block.remaining();
+      }
+
+      private int read() throws IOException {
+          if (!m_block.hasRemaining()) {
+              if (m_pos >= m_length)
+                  return -1;
+              m_block.clear();
+              while (m_block.hasRemaining() && m_pos < m_length) {
+                  int n = m_in.read(m_block, m_pos);
+                  if (n < 0)
+                      break;
+                  m_pos += n;
+              }
+              m_block.flip();
+              if (!m_block.hasRemaining())
+                  return -1;
+          }
+          return m_block.get() & 0xff;
+      }
+
+      /** Parse one line; returns false at the end of the input */
+      private boolean parseLine() throws IOException {
+          int len = 0;
+          int fieldNo = 0;
+          boolean any = false;
+          int recStart = m_out.records * m_recordSize;
+          ensureCapacity(recStart + m_recordSize);
+          ByteBuffer rec = ByteBuffer.wrap(m_out.data, recStart, m_recordSize);
+          while (true) {
+              int c = read();
+              if (c == '\r')
+                  continue;
+              if (c == -1 || c == '\n') {
+                  if (!any) {
+                      // an empty line; stop if the next one is not ours
+                      if (c == -1 || position() >= m_end)
+                          return false;
+                      continue;
+                  }
+              } else {
+                  any = true;
+              }
+              if (c == m_sep || c == '\n' || c == -1) {
+                  if (fieldNo >= m_types.length)
+                      throw new IOException("Line has more than " + m_types.length + " fields");
+                  encode(m_types[fieldNo++], m_field, len, rec);
+                  len = 0;
+                  if (c != m_sep)
+                      break;
+              } else {
+                  if (len == m_field.length)
+                      m_field = Arrays.copyOf(m_field, len * 2);
+                  m_field[len++] = (byte)c;
+              }
+          }
+          if (fieldNo < m_types.length)
+              throw new IOException("Line has fewer than " + m_types.length + " fields");
+          m_out.records++;
+          return true;
+      }
+
+      private void ensureCapacity(int n) {
+          if (n > m_out.data.length)
+              m_out.data = Arrays.copyOf(m_out.data, Math.max(n, m_out.data.length * 2));
+      }
+
+      private void encode(Type t, byte[] b, int len, ByteBuffer rec) {
+          int from = 0;
+          while (from < len && (b[from] & 0xff) <= ' ')
+              from++;
+          while (len > from && (b[len - 1] & 0xff) <= ' ')
+              len--;
+          if (t == Type.INT_TYPE) {
+              rec.putInt(parseInt(b, from, len));
+          } else if (t == Type.STRING_TYPE) {
+              String s = new String(b, from, len - from, Charset.defaultCharset()).trim();
+              if (s.length() > Type.STRING_LEN)
+                  s = s.substring(0, Type.STRING_LEN);
+              rec.putInt(s.length());
+              for (int i = 0; i < s.length(); i++)
+                  rec.put((byte)s.charAt(i));
+              for (int i = s.length(); i < Type.STRING_LEN; i++)
+                  rec.put((byte)0);
+          }
+      }
 
-      int nrecbytes = 0;
-      for (int i = 0; i < numFields ; i++) {
-          nrecbytes += typeAr[i].getLen();
-      }
-      int nrecords = (npagebytes * 8) /  (nrecbytes * 8 + 1);  //floor comes for free
-      
-    //  per record, we need one bit; there are nrecords per page, so we need
-    // nrecords bits, i.e., ((nrecords/32)+1) integers.
-    int nheaderbytes = (nrecords / 8);
-    if (nheaderbytes * 8 < nrecords)
-        nheaderbytes++;  //ceiling
-    int nheaderbits = nheaderbytes * 8;
-
-    BufferedReader br = new BufferedReader(new FileReader(inFile));
-    FileOutputStream os = new FileOutputStream(outFile);
-
-    // our numbers probably won't be much larger than 1024 digits
-    char buf[] = new char[1024];
-
-    int curpos = 0;
-    int recordcount = 0;
-    int npages = 0;
-    int fieldNo = 0;
-
-    ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-    DataOutputStream headerStream = new DataOutputStream(headerBAOS);
-    ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
-    DataOutputStream pageStream = new DataOutputStream(pageBAOS);
-
-    boolean done = false;
-    boolean first = true;
-    while (!done) {
-        int c = br.read();
-        
-        // Ignore Windows/Notepad special line endings
-        if (c == '\r')
-            continue;
-
-        if (c == '\n') {
-            if (first)
-                continue;
-            recordcount++;
-            first = true;
-        } else
-            first = false;
-        if (c == fieldSeparator || c == '\n' || c == '\r') {
-            String s = new String(buf, 0, curpos);
-            if (typeAr[fieldNo] == Type.INT_TYPE) {
-                try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
-                } catch (NumberFormatException e) {
-                    System.out.println ("BAD LINE : " + s);
-                }
-            }
-            else   if (typeAr[fieldNo] == Type.STRING_TYPE) {
-                s = s.trim();
-                int overflow = Type.STRING_LEN - s.length();
-                if (overflow < 0) {
-                    String news = s.substring(0,Type.STRING_LEN);
-                    s  = news;
-                }
-                pageStream.writeInt(s.length());
-                pageStream.writeBytes(s);
-                while (overflow-- > 0)
-                    pageStream.write((byte)0);
-            }
-            curpos = 0;
-            if (c == '\n')
-                fieldNo = 0;
-            else
-                fieldNo++;
-            
-        } else if (c == -1) {
-            done = true;
-            
-        } else {
-            buf[curpos++] = (char)c;
-            continue;
-        }
-        
-        // if we wrote a full page of records, or if we're done altogether,
-        // write out the header of the page.
-        //
-        // in the header, write a 1 for bits that correspond to records we've
-        // written and 0 for empty slots.
-        //
-        // when we're done, also flush the page to disk, but only if it has
-        // records on it.  however, if this file is empty, do flush an empty
-        // page to disk.
-        if (recordcount >= nrecords
-            || done && recordcount > 0
-            || done && npages == 0) {
-            int i = 0;
-            byte headerbyte = 0;
-            
-            for (i=0; i<nheaderbits; i++) {
-                if (i < recordcount)
-                    headerbyte |= (1 << (i % 8));
-                
-                if (((i+1) % 8) == 0) {
-                    headerStream.writeByte(headerbyte);
-                    headerbyte = 0;
-                }
-            }
-            
-            if (i % 8 > 0)
-                headerStream.writeByte(headerbyte);
-            
-            // pad the rest of the page with zeroes
-            
-            for (i=0; i<(npagebytes - (recordcount * nrecbytes + nheaderbytes)); i++)
-                pageStream.writeByte(0);
-            
-            // write header and body to file
-            headerStream.flush();
-            headerBAOS.writeTo(os);
-            pageStream.flush();
-            pageBAOS.writeTo(os);
-            
-            // reset header and body for next page
-            headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-            headerStream = new DataOutputStream(headerBAOS);
-            pageBAOS = new ByteArrayOutputStream(npagebytes);
-            pageStream = new DataOutputStream(pageBAOS);
-            
-            recordcount = 0;
-            npages++;
-        }
-    }
-    br.close();
-    os.close();
+      private static int parseInt(byte[] b, int from, int to) {
+          int i = from;
+          boolean neg = false;
+          if (i < to && (b[i] == '-' || b[i] == '+'))
+              neg = b[i++] == '-';
+          // anything longer than nine digits may overflow; let Integer decide
+          if (i < to && to - i <= 9) {
+              int v = 0;
+              for (; i < to; i++) {
+                  int d = b[i] - '0';
+                  if (d < 0 || d > 9)
+                      break;
+                  v = v * 10 + d;
+              }
+              if (i == to)
+                  return neg ? -v : v;
+          }
+          String s = new String(b, from, to - from, Charset.defaultCharset());
+          try {
+              return Integer.parseInt(s);
+          } catch (NumberFormatException e) {
+              System.out.println ("BAD LINE : " + s);
+              return 0;
+          }
+      }
+  }
+
+  /**
+   * Packs fixed-size records into heap pages and writes them out in order.
+   * <p>
+   * In the header, a 1 marks slots holding records and a 0 empty slots.
+   * Only pages holding records are written, except that an empty file gets
+   * a single empty page.
+   */
+  private static class PageBuilder {
+      private final OutputStream m_out;
+      private final int m_recordSize;
+      private final int m_recordsPerPage;
+      private final int m_headerBytes;
+      private final byte[] m_page;
+      private int m_count = 0;
+      private int m_numPages = 0;
+
+      PageBuilder(File outFile, int npagebytes, Type[] typeAr) throws IOException {
+          int nrecbytes = 0;
+          for (Type t : typeAr)
+              nrecbytes += t.getLen();
+          m_recordSize = nrecbytes;
+          m_recordsPerPage = (npagebytes * 8) / (nrecbytes * 8 + 1);  //floor comes for free
+          m_headerBytes = (m_recordsPerPage + 7) / 8;
+          m_page = new byte[npagebytes];
+          m_out = new BufferedOutputStream(new FileOutputStream(outFile), 16 * npagebytes);
+      }
+
+      int recordSize() {
+          return m_recordSize;
+      }
+
+      void add(byte[] src, int offset) throws IOException {
+          System.arraycopy(src, offset, m_page, m_headerBytes + m_count * m_recordSize, m_recordSize);
+          m_page[m_count >> 3] |= (byte)(1 << (m_count & 7));
+          if (++m_count >= m_recordsPerPage)
+              writePage();
+      }
+
+      void finish() throws IOException {
+          if (m_count > 0 || m_numPages == 0)
+              writePage();
+          m_out.flush();
+      }
+
+      void close() throws IOException {
+          m_out.close();
+      }
+
+      private void writePage() throws IOException {
+          m_out.write(m_page);
+          Arrays.fill(m_page, (byte)0);
+          m_count = 0;
+          m_numPages++;
+      }
   }
 }
@@ -5,21 +5,78 @@ import java.util.*;
 public class HeapFileIterator implements DbFileIterator {
     private TransactionId m_tid;
     private HeapFile m_file;
-    private int m_numPages; //total # of pages in the heap file
+    private int m_firstPage; //first page scanned
+    private int m_numPages; //pages before this one are scanned; the # of pages of the heap file unless a range was given
     
     private int m_currPgNum; //current page number
     private int m_currTupNum;
     private HeapPageIterator m_hpgItr;
-    private HeapPage m_currPg;
+    private TuplePage m_currPg;
+    private ScanRing m_ring; //private frames for scans too large to cache, or null
+    private ReadAhead m_readAhead; //loads the pages after the current one in the background
+    private Predicate m_predicate; //checked on each page before tuples are built, or null
 
+    /**
+     * Tables larger than the buffer pool are scanned through a ScanRing, since
+     * caching them would only push every other page out of the pool.
+     */
     public HeapFileIterator(TransactionId tid, HeapFile file) {
+        this(tid, file, (Predicate) null);
+    }
+
+    /**
+     * @param useRing whether to read pages through a private ScanRing
+     *   instead of the shared replacement policy
+     */
+    public HeapFileIterator(TransactionId tid, HeapFile file, boolean useRing) {
+        this(tid, file, useRing, null);
+    }
+
+    /**
+     * Iterate over the tuples of file that pass predicate, which is checked
+     * on the pages before the tuples are built, see {@link HeapPageIterator}.
+     */
+    public HeapFileIterator(TransactionId tid, HeapFile file, Predicate predicate) {
+        this(tid, file, file.numPages() > Database.getBufferPool().getNumPages(), predicate);
+    }
+
+    /**
+     * @param useRing whether to read pages through a private ScanRing
+     *   instead of the shared replacement policy
+     * @param predicate the predicate tuples must pass, or null for all tuples
+     */
+    public HeapFileIterator(TransactionId tid, HeapFile file, boolean useRing, Predicate predicate) {
+        this(tid, file, 0, file.numPages(), useRing, predicate);
+    }
+
+    /**
+     * Iterate over the tuples on pages firstPage up to, but not including,
+     * endPage of file, such as one segment of a {@link SegmentedHeapFile}.
+     * Ranges larger than the buffer pool are scanned through a ScanRing.
+     */
+    public HeapFileIterator(TransactionId tid, HeapFile file, int firstPage, int endPage) {
+        this(tid, file, firstPage, endPage, endPage - firstPage > Database.getBufferPool().getNumPages(), null);
+    }
+
+    private HeapFileIterator(TransactionId tid, HeapFile file, int firstPage, int endPage,
+                             boolean useRing, Predicate predicate) {
         m_tid = tid;
         m_file = file;
-        m_currPgNum = 0;
+        m_firstPage = firstPage;
+        m_currPgNum = firstPage;
         m_currTupNum = 0;
         m_currPg = null;
-        m_numPages = m_file.numPages();
+        m_numPages = endPage;
         m_hpgItr = null;        
+        m_ring = useRing ? new ScanRing(Database.getBufferPool()) : null;
+        m_readAhead = new ReadAhead(Database.getBufferPool(), m_file.getId(), m_numPages, m_ring);
+        m_predicate = predicate;
+    }
+    
+    private TuplePage fetchPage(PageId pid)
+    	throws DbException, TransactionAbortedException {
+    	m_readAhead.beforeAccess(pid.pageNumber());
+    	return (TuplePage)Database.getBufferPool().getPage(m_tid, pid, Permissions.READ_ONLY, m_ring);
     }
 
     public void open()
@@ -27,10 +84,10 @@ public class HeapFileIterator implements DbFileIterator {
     	if(m_hpgItr!=null) {
     		throw new DbException("opened twice");
     	}
-    	PageId firstPagePid = new HeapPageId(m_file.getId(), 0);
-        m_currPg = (HeapPage)Database.getBufferPool().getPage(m_tid, firstPagePid, Permissions.READ_ONLY);
-        m_hpgItr = new HeapPageIterator(m_currPg);
-        m_currPgNum = 0;
+    	PageId firstPagePid = new HeapPageId(m_file.getId(), m_firstPage);
+        m_currPg = m_firstPage < m_numPages ? fetchPage(firstPagePid) : null; //an empty range
+        m_hpgItr = new HeapPageIterator(m_currPg, m_predicate);
+        m_currPgNum = m_firstPage;
     }
 
     
@@ -38,14 +95,17 @@ public class HeapFileIterator implements DbFileIterator {
     	throws DbException, TransactionAbortedException { //returns false if there is no more page
     	//update the current page to the next page and also update the iterator to iterate the next page
     	
-    	PageId nextPageId = new HeapPageId(m_file.getId(), ++m_currPgNum);
+    	if(++m_currPgNum >= m_numPages) {
+    		return false; //past the pages scanned, which may end before the file
+    	}
+    	PageId nextPageId = new HeapPageId(m_file.getId(), m_currPgNum);
     	try {
-    		m_currPg = (HeapPage)Database.getBufferPool().getPage(m_tid, nextPageId, Permissions.READ_ONLY);
+    		m_currPg = fetchPage(nextPageId);
     		//m_currPg = (HeapPage) m_file.readPage(nextPageId);
     	} catch(IllegalArgumentException e) {
     		return false; //the reqcuested page does not exist
     	}
-    	m_hpgItr = (HeapPageIterator) m_currPg.iterator();
+    	m_hpgItr = new HeapPageIterator(m_currPg, m_predicate);
     	return true;
     }
     
@@ -60,7 +120,7 @@ public class HeapFileIterator implements DbFileIterator {
         }        
         
         HeapPageId tempPid;
-        HeapPage tempPg;
+        TuplePage tempPg;
         HeapPageIterator tempHitr;
         int tempPgNum = m_currPgNum;
         
@@ -68,12 +128,12 @@ public class HeapFileIterator implements DbFileIterator {
         while(++tempPgNum < m_numPages) {
         	tempPid = new HeapPageId(m_file.getId(), tempPgNum);
         	try {
-        		tempPg = (HeapPage) Database.getBufferPool().getPage(m_tid, tempPid, Permissions.READ_ONLY);
+        		tempPg = fetchPage(tempPid);
         	//m_currPg = (HeapPage) Database.getBufferPool().getPage(m_tid, pid, Permissions.READ_ONLY);
         	} catch(IllegalArgumentException e) {
         		return false; // no more page
         	}
-        	tempHitr = (HeapPageIterator) tempPg.iterator();
+        	tempHitr = new HeapPageIterator(tempPg, m_predicate);
         	if (tempHitr.hasNext()) {
         		return true;
         	}
@@ -131,7 +191,7 @@ public class HeapFileIterator implements DbFileIterator {
     	if(m_hpgItr==null) {
     		return;
     	}
-        m_currPgNum = 0;
+        m_currPgNum = m_firstPage;
         m_hpgItr = null;
         m_currPg = null;   	
     }
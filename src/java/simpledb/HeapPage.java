@@ -2,68 +2,76 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * The page is a view over a buffer holding its on-disk image (see
+ * {@link AbstractTuplePage}): the header and the fixed-size slots are read
+ * from and written to that buffer. Tuples are
+ * only decoded when asked for, so reading a page costs nothing per row it
+ * holds, and a single field can be decoded without building the tuple.
  *
  * @see HeapFile
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage extends AbstractTuplePage {
 
-    final HeapPageId pid;
-    final TupleDesc td;
-    final byte header[];
-    final Tuple tuples[];
+    final Tuple tuples[]; //tuples decoded so far, null until a slot is first asked for
     final int numSlots;
+    private final int m_headerSize;
+    private final SlotBitmap m_slots; //decoded header; written through to the page image
 
-    byte[] oldData;
-    private final Byte oldDataLock=new Byte((byte)0);
-    
-    private boolean m_dirty;
-    private TransactionId m_trid;
+    private static final byte[] ZEROES = new byte[512]; //source of bulk zero fills
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
      * the slots of the page that are in use, some number of tuple slots.
      *  Specifically, the number of tuples is equal to: <p>
-     *          floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1))
+     *          floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
-     * database table, which can be determined via {@link Catalog#getTupleDesc}.
+     * database table, which can be determined via {@link Catalog#getTupleDesc},
+     * and page size is that of the table's file, see {@link DbFile#getPageSize}.
      * The number of 8-bit header words is equal to:
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#getPageSize()
+     * @see DbFile#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
-    	m_dirty = false;
-        this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
-        this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this(id, ByteBuffer.wrap(data.clone()));
+    }
 
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
+    /**
+     * Create a HeapPage that views the page image in frame, in the format
+     * described above. The page reads and writes frame directly, so the
+     * caller must not reuse it until the page has been {@link #detach}ed.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer frame) throws IOException {
+        super(id, frame);
+        this.numSlots = getNumTuples();
+        this.m_headerSize = getHeaderSize();
+        if (frame.capacity() < m_headerSize + numSlots * td.getSize())
+            throw new IOException("page image too short");
+        m_slots = new SlotBitmap(frame, 0, numSlots);
         
+        // records are decoded on demand by getTuple and getField
         tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
+    }
 
-        setBeforeImage();
+    protected HeapPage newPage(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /** @return the offset of the given slot in the page image */
+    private int slotOffset(int slotId) {
+        return m_headerSize + slotId * td.getSize();
     }
 
     /** Retrieve the number of tuples on this page.
@@ -71,7 +79,7 @@ public class HeapPage implements Page {
     */
     private int getNumTuples() {        
         // some code goes here
-        return (int) Math.floor((BufferPool.getPageSize()*8)/(td.getSize()*8+1));
+        return (int) Math.floor((pageSize*8)/(td.getSize()*8+1));
 
     }
 
@@ -91,50 +99,15 @@ public class HeapPage implements Page {
     /** Return a view of this page before it was modified
         -- used by recovery */
     public HeapPage getBeforeImage(){
-        try {
-            byte[] oldDataRef = null;
-            synchronized(oldDataLock)
-            {
-                oldDataRef = oldData;
-            }
-            return new HeapPage(pid,oldDataRef);
-        } catch (IOException e) {
-            e.printStackTrace();
-            //should never happen -- we parsed it OK before!
-            System.exit(1);
-        }
-        return null;
-    }
-    
-    public void setBeforeImage() {
-        synchronized(oldDataLock)
-        {
-        oldData = getPageData().clone();
-        }
+        return (HeapPage) super.getBeforeImage();
     }
 
     /**
-     * @return the PageId associated with this page.
+     * Decode the tuple in the given slot from the page image.
      */
-    public HeapPageId getId() {
-    // some code goes here
-    	return pid;
-    }
-
-    /**
-     * Suck up tuples from the source file.
-     */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
+    private Tuple readNextTuple(int slotId) throws NoSuchElementException {
+        // if associated bit is not set, return null.
         if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
             return null;
         }
 
@@ -142,9 +115,12 @@ public class HeapPage implements Page {
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
+        ByteBuffer in = image().duplicate();
+        in.clear();
+        in.position(slotOffset(slotId));
         try {
             for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
+                Field f = td.getFieldType(j).parse(in);
                 t.setField(j, f);
             }
         } catch (java.text.ParseException e) {
@@ -155,76 +131,13 @@ public class HeapPage implements Page {
         return t;
     }
 
-    /**
-     * Generates a byte array representing the contents of this page.
-     * Used to serialize this page to disk.
-     * <p>
-     * The invariant here is that it should be possible to pass the byte
-     * array generated by getPageData to the HeapPage constructor and
-     * have it produce an identical HeapPage object.
-     *
-     * @see #HeapPage
-     * @return A byte array correspond to the bytes of this page.
-     */
-    public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+    /** Fill the given slot of the page image with zeroes. */
+    private void clearSlot(int slotId) {
+        ByteBuffer out = writableData().duplicate();
+        out.clear();
+        out.position(slotOffset(slotId));
+        for (int n = td.getSize(); n > 0; n -= ZEROES.length)
+            out.put(ZEROES, 0, Math.min(n, ZEROES.length));
     }
 
     /**
@@ -237,8 +150,14 @@ public class HeapPage implements Page {
      * @return The returned ByteArray.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.getPageSize();
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the image of an empty page of pageSize bytes
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -261,6 +180,7 @@ public class HeapPage implements Page {
     	}
     	markSlotUsed(slotNum, false);
     	tuples[slotNum] = null;
+    	clearSlot(slotNum); //empty slots are all zeroes on disk
     }
 
     /**
@@ -276,62 +196,29 @@ public class HeapPage implements Page {
     	if(!t.getTupleDesc().equals(this.td))
     		throw new DbException("HeapPage: tuple desc mismatch");
     	
-    	int emptySlotNum = -1;
-    	for(int i=0; i<numSlots; i++) {
-    		if(!isSlotUsed(i))
-    			emptySlotNum = i;
-    	}
+    	int emptySlotNum = m_slots.nextClear(0);
     	if(emptySlotNum==-1)
     		throw new DbException("HeapPage: no more slot on the heap page");
+    	
+    	//encode the tuple straight into the page image
+    	ByteBuffer out = writableData().duplicate();
+    	out.clear();
+    	out.position(slotOffset(emptySlotNum));
+    	for(int j=0; j<td.numFields(); j++)
+    		t.getField(j).serialize(out);
+    	
     	RecordId newRecId = new RecordId(pid, emptySlotNum);
     	t.setRecordId(newRecId);
     	tuples[emptySlotNum] = t;
     	markSlotUsed(emptySlotNum, true);    	
     }
 
-    /**
-     * Marks this page as dirty/not dirty and record that transaction
-     * that did the dirtying
-     */
-    public void markDirty(boolean dirty, TransactionId tid) {
-        // some code goes here
-	// not necessary for lab1
-    	m_dirty = dirty;
-    	if(dirty) {
-    		m_trid = tid;
-    	} else {
-    		m_trid = null;
-    	}
-    }
-
-    /**
-     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
-     */
-    public TransactionId isDirty() {
-        // some code goes here
-	// Not necessary for lab1
-    	if(m_dirty)
-    		return m_trid;
-    	else
-    		return null;
-    }
-
     /**
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
         // some code goes here
-    	int usedSlots = 0;
-        for (int i = 0; i < header.length; i++) { //ith hdr slot
-            for (int j = 0; j < 8; j++) { //jth bit
-                int slotNum = (i * 8) + j;
-                if (isSlotUsed(slotNum)) {
-                    usedSlots++;
-                }
-            } // end inner for
-        }
-
-        return numSlots-usedSlots;
+        return numSlots-m_slots.getUsed();
     }
 
     /**
@@ -339,17 +226,19 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-    	int hdrSlotNum = i / 8,
-    		bitNum = i % 8;
-        if (hdrSlotNum >= header.length) { //out of range
+        if (i / 8 >= m_headerSize) { //out of range
         	System.err.println("HeapPage: isSlotUsed - out of range");
         	System.exit(1);
         }
-        byte headerTargetSlot = header[hdrSlotNum];
-        int maskVal = 1 << bitNum; 
-        return (headerTargetSlot & maskVal) > 0;
+        return i < numSlots && m_slots.isSet(i); //the header's last byte may have spare bits
+    }
+
+    /**
+     * @return the first used slot at or after slot i, or -1 if there is none
+     */
+    public int nextUsedSlot(int i) {
+        return i < 0 ? m_slots.nextSet(0) : m_slots.nextSet(i);
     }
-    
 
     /**
      * Abstraction to fill or clear a slot on this page.
@@ -357,44 +246,62 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         // some code goes here
         // not necessary for lab1
-	    int hdrSlotNum = i / 8,
-			bitNum = i % 8;
-	    if (hdrSlotNum >= header.length) { //out of range
-	    	System.err.println("HeapPage: isSlotUsed - out of range");
+	    if (i < 0 || i >= numSlots) { //out of range
+	    	System.err.println("HeapPage: markSlotUsed - out of range");
 	    	System.exit(1);
 	    }
-	    byte headerTargetSlot = header[hdrSlotNum];
-	    int maskVal = 1 << bitNum; 
-	    int result = 0;
-	    if(value) {
-	    	result = headerTargetSlot | maskVal; //mark 1 to the spot
-	    } else {
-	    	result = headerTargetSlot & ~maskVal; //mark 0 to the spot
-	    }
-	    header[hdrSlotNum] = (byte)result;
+	    m_slots.set(i, value, writableData(), 0);
     }
 
-    /**
-     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
-     * (note that this iterator shouldn't return tuples in empty slots!)
-     */
-    public Iterator<Tuple> iterator() {
-        // some code goes here
-    	Iterator<Tuple> hpitr = new HeapPageIterator(this);
-    	return hpitr;
-    }
-    
-    public Tuple getTuple(int i) {
+    public synchronized Tuple getTuple(int i) {
     	if(i>=0 && i<numSlots) {
-    		return tuples[i];
+    		Tuple t = tuples[i];
+    		if(t==null && isSlotUsed(i)) { //first time anyone asks for this slot
+    			t = readNextTuple(i);
+    			tuples[i] = t;
+    		}
+    		return t;
     	} else {
     		return null;
     	}
     }
     
+    /**
+     * Return field j of the tuple in slot i, decoding just that field if
+     * the tuple has not been decoded.
+     *
+     * @return the field, or null if the slot is empty or out of range
+     */
+    public synchronized Field getField(int i, int j) {
+    	if(i<0 || i>=numSlots || !isSlotUsed(i))
+    		return null;
+    	Tuple t = tuples[i];
+    	if(t!=null)
+    		return t.getField(j);
+    	
+    	int offset = slotOffset(i);
+    	for(int k=0; k<j; k++)
+    		offset += td.getFieldType(k).getLen();
+    	ByteBuffer in = image().duplicate();
+    	in.clear();
+    	in.position(offset);
+    	try {
+    		return td.getFieldType(j).parse(in);
+    	} catch(java.text.ParseException e) {
+    		throw new NoSuchElementException("parsing error!");
+    	}
+    }
+    
     public int getNumSlots() {
     	return numSlots;
     }
 
+    /**
+     * @return the number of empty slots, see {@link PageFormat#FIXED}
+     */
+    public int getFreeSpace() {
+    	return getNumEmptySlots();
+    }
+
 }
 
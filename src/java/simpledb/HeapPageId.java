@@ -42,15 +42,7 @@ public class HeapPageId implements PageId {
      */
     public int hashCode() {
         // some code goes here
-    	int n = m_pgNum,
-    		i = 0;
-    	
-    	while(n>0) {
-    		n = n/10;
-    		i++;
-    	}
-    	
-    	return (int) (m_tableId*Math.pow(10, i) + m_pgNum);
+    	return 31 * m_tableId + m_pgNum;
     }
 
     /**
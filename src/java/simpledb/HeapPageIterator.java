@@ -4,14 +4,27 @@ import java.util.*;
 
 
 public class HeapPageIterator implements Iterator<Tuple> { //up-to-date with the page
-    private HeapPage m_page;
+    private TuplePage m_page;
     private int m_numTuples;
     private int m_currentTuple;
+    private Predicate m_predicate; //tuples that fail it are skipped before they are built, or null
         
     // Assumes pages cannot be modified while iterating over them
     // Iterates over only valid tuples
-    public HeapPageIterator(HeapPage page) {
+    public HeapPageIterator(TuplePage page) {
+        this(page, null);
+    }
+
+    /**
+     * Iterate over the tuples of page that pass predicate. The predicate is
+     * checked on the one field it reads, see {@link Predicate#filter(TuplePage, int)},
+     * so the tuples it rejects are never built.
+     *
+     * @param predicate the predicate tuples must pass, or null for all tuples
+     */
+    public HeapPageIterator(TuplePage page, Predicate predicate) {
         m_page = page;
+        m_predicate = predicate;
         m_currentTuple = 0;
         if(page!=null) {
         	m_numTuples = m_page.getNumSlots();
@@ -25,29 +38,35 @@ public class HeapPageIterator implements Iterator<Tuple> { //up-to-date with the
     		return false;
     	}
     	
-    	for(int i=m_currentTuple; i<m_numTuples; i++) { //check iteratively for the next valid tuple
-    													//this is necessary because the page can be modified 
-    													//after the iterator is created
-    		if(m_page.isSlotUsed(i)) {
-    			return true;
-    		}
+    	//look for the next valid tuple from the bitmap, 64 slots at a time;
+    	//this is necessary because the page can be modified after the iterator is created
+    	int slot = nextSlot(m_currentTuple);
+    	if(slot>=0)
+    		m_currentTuple = slot; //so that next does not check the slots skipped again
+    	return slot >= 0;
+    }
+    
+    /** @return the first used slot at or after slot i whose tuple passes m_predicate, or -1 */
+    private int nextSlot(int i) {
+    	int slot = m_page.nextUsedSlot(i);
+    	if(m_predicate!=null) {
+    		while(slot>=0 && !m_predicate.filter(m_page, slot))
+    			slot = m_page.nextUsedSlot(slot+1);
     	}
-    	
-    	
-    	//nothing valud tuple left
-        return false;
+    	return slot;
     }
         
     public Tuple next() { // assuming the tuple are not packed
     	if(m_currentTuple>=m_numTuples) { //no more tuple
     		return null;
-    	} else if(m_page.isSlotUsed(m_currentTuple)) { //the current tuple is valid
-    		return m_page.getTuple(m_currentTuple++);
-    	} else { //the current tuple not valid
-    		m_currentTuple++;
-    		return next(); //recursively find the next valid tuple from the page
     	}
-        
+    	int slot = nextSlot(m_currentTuple);
+    	if(slot<0) { //nothing valid tuple left
+    		m_currentTuple = m_numTuples;
+    		return null;
+    	}
+    	m_currentTuple = slot+1;
+    	return m_page.getTuple(slot);
     }
         
     public void remove() throws UnsupportedOperationException {
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 /**
  * Inserts tuples read from the child operator into the tableid specified in the
@@ -9,6 +10,13 @@ import java.io.IOException;
 public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of tuples read ahead from the child; if the child has at least
+     * this many, they are loaded with {@link DbFile#bulkInsert} in batches
+     * of this size instead of one insertTuple call each.
+     */
+    public static final int BULK_THRESHOLD = 4096;
     private DbIterator m_child;
     private int m_tabId;
     private TransactionId m_tid;
@@ -82,10 +90,18 @@ public class Insert extends Operator {
     	
     	int insert_count = 0;
     	try {
-    		while (m_child.hasNext()) {
-    			Tuple next = m_child.next();
-    			insert_count++;
-    			Database.getBufferPool().insertTuple(m_tid, m_tabId, next);
+    		ArrayList<Tuple> batch = nextBatch();
+    		if (batch.size() < BULK_THRESHOLD) { //too few to be worth whole new pages
+    			for (Tuple next: batch) {
+    				insert_count++;
+    				Database.getBufferPool().insertTuple(m_tid, m_tabId, next);
+    			}
+    		} else {
+    			DbFile file = Database.getCatalog().getDatabaseFile(m_tabId);
+    			while (!batch.isEmpty()) {
+    				insert_count += file.bulkInsert(m_tid, batch.iterator());
+    				batch = nextBatch();
+    			}
     		}
     	} catch(IOException e) {
     		System.err.println("Error inserting tuple");
@@ -99,6 +115,14 @@ public class Insert extends Operator {
     	return result;
     }
 
+    /** Read up to BULK_THRESHOLD tuples from the child. */
+    private ArrayList<Tuple> nextBatch() throws DbException, TransactionAbortedException {
+    	ArrayList<Tuple> batch = new ArrayList<Tuple>();
+    	while (batch.size() < BULK_THRESHOLD && m_child.hasNext())
+    		batch.add(m_child.next());
+    	return batch;
+    }
+
     @Override
     public DbIterator[] getChildren() {
         // some code goes here
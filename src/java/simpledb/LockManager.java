@@ -0,0 +1,257 @@
+package simpledb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LockManager grants shared (READ_ONLY) and exclusive (READ_WRITE) page
+ * locks to transactions, as required for strict two-phase locking.
+ * <p>
+ * The lock table is split into stripes, each protected by its own monitor,
+ * so transactions locking unrelated pages never contend on a global lock.
+ * The set of pages each transaction holds is kept separately so that all of
+ * its locks can be released at commit or abort without touching the stripes
+ * of pages it never locked.
+ * <p>
+ * Blocked transactions are recorded in a {@link WaitForGraph}, which is
+ * checked for cycles whenever a wait begins; the youngest transaction of a
+ * cycle is aborted. Counters for detected deadlocks and lock wait times are
+ * kept for monitoring.
+ *
+ * @Threadsafe
+ * @see BufferPool#getPage
+ */
+public class LockManager {
+
+    /** Number of independently locked stripes of the lock table. */
+    public static final int DEFAULT_STRIPES = 16;
+
+    /**
+     * Milliseconds between re-reading the holders of a contended lock, which
+     * can change without the waiter being notified (a new sharer, say).
+     */
+    private static final long RECHECK_INTERVAL = 50;
+
+    private final Stripe[] m_stripes;
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> m_lockSets;
+    private final WaitForGraph m_waitsFor;
+
+    private final AtomicLong m_deadlocks;
+    private final AtomicLong m_waits;
+    private final AtomicLong m_waitNanos;
+
+    /** Lock state of a single page; guarded by the monitor of its stripe. */
+    private static class PageLock {
+        HashSet<TransactionId> sharers = new HashSet<TransactionId>();
+        TransactionId owner; //exclusive holder, or null
+
+        boolean isFree() {
+            return owner == null && sharers.isEmpty();
+        }
+    }
+
+    private static class Stripe {
+        HashMap<PageId, PageLock> locks = new HashMap<PageId, PageLock>();
+    }
+
+    public LockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param numStripes number of stripes; rounded up to a power of two
+     */
+    public LockManager(int numStripes) {
+        int n = 1;
+        while (n < numStripes)
+            n <<= 1;
+        m_stripes = new Stripe[n];
+        for (int i = 0; i < n; i++)
+            m_stripes[i] = new Stripe();
+        m_lockSets = new ConcurrentHashMap<TransactionId, Set<PageId>>();
+        m_waitsFor = new WaitForGraph();
+        m_deadlocks = new AtomicLong(0);
+        m_waits = new AtomicLong(0);
+        m_waitNanos = new AtomicLong(0);
+    }
+
+    private Stripe stripeFor(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return m_stripes[h & (m_stripes.length - 1)];
+    }
+
+    /**
+     * Acquire a lock on pid for tid, blocking while a conflicting lock is
+     * held by another transaction. A READ_WRITE request by a transaction that
+     * already holds a shared lock upgrades it once the other sharers leave.
+     *
+     * @throws TransactionAbortedException if tid was chosen as the victim of
+     *   a deadlock while waiting
+     */
+    public void acquire(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException {
+        boolean exclusive = perm == Permissions.READ_WRITE;
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            PageLock lock = stripe.locks.get(pid);
+            if (lock == null) {
+                lock = new PageLock();
+                stripe.locks.put(pid, lock);
+            }
+            if (!tryGrant(lock, tid, exclusive)) {
+                long start = System.nanoTime();
+                try {
+                    waitForGrant(stripe, lock, tid, exclusive);
+                } finally {
+                    m_waitsFor.doneWaiting(tid);
+                    m_waits.incrementAndGet();
+                    m_waitNanos.addAndGet(System.nanoTime() - start);
+                    if (lock.isFree())
+                        stripe.locks.remove(pid);
+                }
+            }
+        }
+        lockSetOf(tid).add(pid);
+    }
+
+    /** Block on the stripe monitor until tid is granted lock. */
+    private void waitForGrant(Stripe stripe, PageLock lock, TransactionId tid, boolean exclusive)
+        throws TransactionAbortedException {
+        do {
+            if (m_waitsFor.isVictim(tid))
+                throw new TransactionAbortedException();
+            TransactionId victim = m_waitsFor.waitFor(tid, blockersOf(lock, tid));
+            if (victim != null)
+                m_deadlocks.incrementAndGet();
+            if (victim != null && victim.equals(tid))
+                throw new TransactionAbortedException();
+            try {
+                stripe.wait(RECHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                // only deadlock resolution interrupts lock waiters
+                throw new TransactionAbortedException();
+            }
+        } while (!tryGrant(lock, tid, exclusive));
+    }
+
+    private static Set<TransactionId> blockersOf(PageLock lock, TransactionId tid) {
+        HashSet<TransactionId> blockers = new HashSet<TransactionId>(lock.sharers);
+        if (lock.owner != null)
+            blockers.add(lock.owner);
+        blockers.remove(tid);
+        return blockers;
+    }
+
+    /** @return true if the lock is now held by tid in the requested mode */
+    private boolean tryGrant(PageLock lock, TransactionId tid, boolean exclusive) {
+        if (lock.owner != null && lock.owner.equals(tid))
+            return true;
+        if (lock.owner != null)
+            return false;
+        if (!exclusive) {
+            lock.sharers.add(tid);
+            return true;
+        }
+        if (lock.sharers.isEmpty()
+            || (lock.sharers.size() == 1 && lock.sharers.contains(tid))) {
+            lock.sharers.remove(tid);
+            lock.owner = tid;
+            return true;
+        }
+        return false;
+    }
+
+    private Set<PageId> lockSetOf(TransactionId tid) {
+        Set<PageId> set = m_lockSets.get(tid);
+        if (set == null) {
+            set = Collections.newSetFromMap(new ConcurrentHashMap<PageId, Boolean>());
+            Set<PageId> raced = m_lockSets.putIfAbsent(tid, set);
+            if (raced != null)
+                set = raced;
+        }
+        return set;
+    }
+
+    /** Release whatever lock tid holds on pid. */
+    public void release(TransactionId tid, PageId pid) {
+        Set<PageId> set = m_lockSets.get(tid);
+        if (set != null)
+            set.remove(pid);
+        unlock(tid, pid);
+    }
+
+    private void unlock(TransactionId tid, PageId pid) {
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            PageLock lock = stripe.locks.get(pid);
+            if (lock == null)
+                return;
+            if (lock.owner != null && lock.owner.equals(tid))
+                lock.owner = null;
+            lock.sharers.remove(tid);
+            if (lock.isFree())
+                stripe.locks.remove(pid);
+            stripe.notifyAll();
+        }
+    }
+
+    /**
+     * Release every lock held by tid.
+     *
+     * @return the pages tid had locked
+     */
+    public Set<PageId> releaseAll(TransactionId tid) {
+        Set<PageId> set = m_lockSets.remove(tid);
+        if (set == null)
+            return Collections.emptySet();
+        for (PageId pid : set)
+            unlock(tid, pid);
+        return set;
+    }
+
+    /** @return true if tid holds a lock of either mode on pid */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        Set<PageId> set = m_lockSets.get(tid);
+        return set != null && set.contains(pid);
+    }
+
+    /** @return true if tid holds the exclusive lock on pid */
+    public boolean holdsExclusive(TransactionId tid, PageId pid) {
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            PageLock lock = stripe.locks.get(pid);
+            return lock != null && lock.owner != null && lock.owner.equals(tid);
+        }
+    }
+
+    /** @return the number of deadlocks detected and broken so far */
+    public long getDeadlockCount() {
+        return m_deadlocks.get();
+    }
+
+    /** @return the number of lock requests that had to wait */
+    public long getWaitCount() {
+        return m_waits.get();
+    }
+
+    /** @return the mean time, in milliseconds, a waiting lock request waited */
+    public double getAverageWaitMillis() {
+        long waits = m_waits.get();
+        if (waits == 0)
+            return 0;
+        return m_waitNanos.get() / 1e6 / waits;
+    }
+
+    /** @return the pages tid currently holds locks on */
+    public Set<PageId> getLockedPages(TransactionId tid) {
+        Set<PageId> set = m_lockSets.get(tid);
+        if (set == null)
+            return Collections.emptySet();
+        return Collections.unmodifiableSet(set);
+    }
+}
@@ -2,6 +2,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.lang.reflect.*;
 
@@ -51,8 +52,8 @@ transaction id.
 <li> Each log record ends with a long integer file offset representing
 the position in the log file where the record began.
 
-<li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
-CHECKPOINT
+<li> There are six record types: ABORT, COMMIT, UPDATE, BEGIN,
+CHECKPOINT, and EXTEND
 
 <li> ABORT, COMMIT, and BEGIN records contain no additional data
 
@@ -67,6 +68,12 @@ of the record is an integer count of the number of transactions, as well
 as a long integer transaction id and a long integer first record offset
 for each active transaction.
 
+<li> EXTEND records consist of an integer table id, the number of the
+first page and the number of pages that the transaction appended to the
+table in one write without UPDATE records; see HeapFile.bulkInsert.
+Before the transaction commits, those pages hold nothing anyone else
+can see, so undoing it just empties them again.
+
 </ul>
 
 */
@@ -82,6 +89,7 @@ public class LogFile {
     static final int UPDATE_RECORD = 3;
     static final int BEGIN_RECORD = 4;
     static final int CHECKPOINT_RECORD = 5;
+    static final int EXTEND_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
     final static int INT_SIZE = 4;
@@ -218,6 +226,29 @@ public class LogFile {
         Debug.log("WRITE OFFSET = " + currentOffset);
     }
 
+    /** Write an EXTEND record to the log for the specified tid: it is
+        about to append numPages new pages to the table, from page
+        firstPage on, without logging them one by one.  The caller
+        forces the log before writing the pages.
+        @param tid The transaction appending the pages
+        @param tableId The table the pages are appended to
+        @param firstPage The number of the first page appended
+        @param numPages The number of pages appended
+    */
+    public synchronized void logExtend(TransactionId tid, int tableId,
+                                       int firstPage, int numPages)
+        throws IOException {
+        Debug.log("EXTEND, offset = " + raf.getFilePointer());
+        preAppend();
+        raf.writeInt(EXTEND_RECORD);
+        raf.writeLong(tid.getId());
+        raf.writeInt(tableId);
+        raf.writeInt(firstPage);
+        raf.writeInt(numPages);
+        raf.writeLong(currentOffset);
+        currentOffset = raf.getFilePointer();
+    }
+
     void writePageData(RandomAccessFile raf, Page p) throws IOException{
         PageId pid = p.getId();
         int pageInfo[] = pid.serialize();
@@ -240,9 +271,17 @@ public class LogFile {
         for (int i = 0; i < pageInfo.length; i++) {
             raf.writeInt(pageInfo[i]);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        if (p instanceof FramedPage) {
+            // write the image straight through the channel, which shares raf's position
+            ByteBuffer image = ((FramedPage) p).getPageImage();
+            raf.writeInt(image.remaining());
+            while (image.hasRemaining())
+                raf.getChannel().write(image);
+        } else {
+            byte[] pageData = p.getPageData();
+            raf.writeInt(pageData.length);
+            raf.write(pageData);
+        }
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
@@ -265,7 +304,7 @@ public class LogFile {
             }
             pid = (PageId)idConsts[0].newInstance(idArgs);
 
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+            Constructor<?> pageConst = pageClass.getDeclaredConstructor(idClass, byte[].class);
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
@@ -275,7 +314,7 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+            newPage = (Page)pageConst.newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException e){
@@ -290,6 +329,9 @@ public class LogFile {
         } catch (InvocationTargetException e) {
             e.printStackTrace();
             throw new IOException();
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
+            throw new IOException();
         }
         return newPage;
 
@@ -429,6 +471,11 @@ public class LogFile {
                 case BEGIN_RECORD:
                     tidToFirstLogRecord.put(record_tid,newStart);
                     break;
+                case EXTEND_RECORD:
+                    logNew.writeInt(raf.readInt());
+                    logNew.writeInt(raf.readInt());
+                    logNew.writeInt(raf.readInt());
+                    break;
                 }
 
                 //all xactions finish with a pointer
@@ -494,10 +541,77 @@ public class LogFile {
             synchronized (this) {
                 recoveryUndecided = false;
                 // some code goes here
+                undoExtends();
             }
          }
     }
 
+    /** Empty the pages that transactions which neither committed nor
+        aborted appended without UPDATE records, as listed by their
+        EXTEND records.  Tables no longer in the catalog are skipped.
+    */
+    private void undoExtends() throws IOException {
+        if (raf.length() <= LONG_SIZE)
+            return;
+        HashSet<Long> finished = new HashSet<Long>();
+        ArrayList<Long> extendTids = new ArrayList<Long>();
+        ArrayList<int[]> extents = new ArrayList<int[]>();
+        raf.seek(LONG_SIZE);
+        while (true) {
+            try {
+                int type = raf.readInt();
+                long record_tid = raf.readLong();
+                switch (type) {
+                case COMMIT_RECORD:
+                case ABORT_RECORD:
+                    finished.add(record_tid);
+                    break;
+                case UPDATE_RECORD:
+                    skipPageData(raf);
+                    skipPageData(raf);
+                    break;
+                case CHECKPOINT_RECORD:
+                    int numXactions = raf.readInt();
+                    raf.skipBytes(numXactions * 2 * LONG_SIZE);
+                    break;
+                case EXTEND_RECORD:
+                    int[] extent = { raf.readInt(), raf.readInt(), raf.readInt() };
+                    extendTids.add(record_tid);
+                    extents.add(extent);
+                    break;
+                }
+                raf.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        raf.seek(raf.length());
+
+        for (int i = 0; i < extents.size(); i++) {
+            if (finished.contains(extendTids.get(i)))
+                continue;
+            int[] extent = extents.get(i);
+            DbFile f;
+            try {
+                f = Database.getCatalog().getDatabaseFile(extent[0]);
+            } catch (NoSuchElementException e) {
+                continue;
+            }
+            if (f instanceof HeapFile)
+                ((HeapFile) f).emptyPages(extent[1], extent[2]);
+        }
+    }
+
+    /** Skip over page data written by writePageData. */
+    void skipPageData(RandomAccessFile raf) throws IOException {
+        raf.readUTF();
+        raf.readUTF();
+        int numIdArgs = raf.readInt();
+        raf.skipBytes(numIdArgs * INT_SIZE);
+        int pageSize = raf.readInt();
+        raf.skipBytes(pageSize);
+    }
+
     /** Print out a human readable represenation of the log */
     public void print() throws IOException {
         // some code goes here
@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 /**
@@ -271,6 +272,54 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * @return the names of the fields of the table with the given alias that
+     *   the query refers to, in the order of td. A query that selects * or
+     *   names no field of the table gets all of them, or the first one
+     *   respectively.
+     */
+    private String[] referencedFields(String alias, TupleDesc td) {
+        ArrayList<String> names = new ArrayList<String>();
+        for (LogicalSelectListNode si : selectList)
+            names.add(si.fname);
+        for (LogicalFilterNode lf : filters) {
+            if (alias.equals(lf.tableAlias))
+                names.add(alias + "." + lf.fieldPureName);
+        }
+        for (LogicalJoinNode lj : joins) {
+            if (alias.equals(lj.t1Alias))
+                names.add(alias + "." + lj.f1PureName);
+            if (alias.equals(lj.t2Alias))
+                names.add(alias + "." + lj.f2PureName);
+        }
+        names.add(groupByField);
+        names.add(aggField);
+        names.add(oByField);
+
+        boolean[] used = new boolean[td.numFields()];
+        for (String name : names) {
+            if (name == null)
+                continue;
+            if (name.equals("null.*") || name.equals(alias + ".*"))
+                Arrays.fill(used, true);
+            else if (name.startsWith(alias + ".")) {
+                try {
+                    used[td.fieldNameToIndex(name.substring(alias.length() + 1))] = true;
+                } catch (NoSuchElementException e) {
+                    //reported as an unknown field when the plan is built
+                }
+            }
+        }
+        ArrayList<String> fields = new ArrayList<String>();
+        for (int i = 0; i < used.length; i++) {
+            if (used[i])
+                fields.add(td.getFieldName(i));
+        }
+        if (fields.isEmpty())
+            fields.add(td.getFieldName(0));
+        return fields.toArray(new String[0]);
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -294,7 +343,11 @@ public class LogicalPlan {
             LogicalScanNode table = tableIt.next();
             SeqScan ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 DbFile file = Database.getCatalog().getDatabaseFile(table.t);
+                 if (file instanceof ColumnFile) //read just the columns the query uses
+                     ss = new ColumnScan(t, file.getId(), table.alias, referencedFields(table.alias, file.getTupleDesc()));
+                 else
+                     ss = new SeqScan(t, file.getId(), table.alias);
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
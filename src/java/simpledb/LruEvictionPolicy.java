@@ -0,0 +1,82 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Classic least recently used replacement. Resident pages are kept on an
+ * intrusive doubly linked recency list, so every operation is constant time
+ * apart from skipping pages the victim filter rejects.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private HashMap<PageId, Node> m_nodes;
+    private Node m_head; //sentinel; m_head.next is the lru, m_head.prev the mru
+
+    private static class Node {
+        PageId pid;
+        Node prev;
+        Node next;
+
+        Node(PageId p) {
+            pid = p;
+            prev = this;
+            next = this;
+        }
+    }
+
+    public LruEvictionPolicy() {
+        m_nodes = new HashMap<PageId, Node>();
+        m_head = new Node(null);
+    }
+
+    public void pageAdded(PageId pid) {
+        Node node = new Node(pid);
+        m_nodes.put(pid, node);
+        linkAtMru(node);
+    }
+
+    public void pageAccessed(PageId pid) {
+        Node node = m_nodes.get(pid);
+        if (node == null)
+            return;
+        unlink(node);
+        linkAtMru(node);
+    }
+
+    public void pageRemoved(PageId pid) {
+        Node node = m_nodes.remove(pid);
+        if (node != null)
+            unlink(node);
+    }
+
+    public PageId chooseVictim(VictimFilter filter) {
+        for (Node node = m_head.next; node != m_head; node = node.next) {
+            if (filter.accept(node.pid))
+                return node.pid;
+        }
+        return null;
+    }
+
+    public List<PageId> victimOrder() {
+        ArrayList<PageId> order = new ArrayList<PageId>(m_nodes.size());
+        for (Node node = m_head.next; node != m_head; node = node.next)
+            order.add(node.pid);
+        return order;
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node;
+        node.next = node;
+    }
+
+    private void linkAtMru(Node node) {
+        node.prev = m_head.prev;
+        node.next = m_head;
+        m_head.prev.next = node;
+        m_head.prev = node;
+    }
+}
@@ -0,0 +1,116 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). The victim is the page whose
+ * K-th most recent reference lies furthest in the past; pages referenced
+ * fewer than K times are considered infinitely old and are evicted first, in
+ * LRU order. Reference history of evicted pages is retained for a while so a
+ * page that comes straight back is not treated as brand new.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private final int m_k;
+    private long m_clock; //logical time, advanced on every reference
+
+    private HashMap<PageId, History> m_resident;
+    private TreeSet<History> m_order; //resident pages, best victim first
+    private LinkedHashMap<PageId, History> m_retained; //history of evicted pages
+
+    private static class History {
+        PageId pid;
+        long[] refs; //refs[0] is the most recent reference time, 0 if none
+
+        History(PageId p, int k) {
+            pid = p;
+            refs = new long[k];
+        }
+
+        void reference(long time) {
+            System.arraycopy(refs, 0, refs, 1, refs.length - 1);
+            refs[0] = time;
+        }
+
+        boolean hasK() {
+            return refs[refs.length - 1] != 0;
+        }
+    }
+
+    private static final Comparator<History> VICTIM_ORDER = new Comparator<History>() {
+        public int compare(History a, History b) {
+            // pages with fewer than K references first
+            if (a.hasK() != b.hasK())
+                return a.hasK() ? 1 : -1;
+            long ka = a.hasK() ? a.refs[a.refs.length - 1] : a.refs[0];
+            long kb = b.hasK() ? b.refs[b.refs.length - 1] : b.refs[0];
+            if (ka != kb)
+                return ka < kb ? -1 : 1;
+            // reference times are unique, so this only matters for equal histories
+            return a.refs[0] < b.refs[0] ? -1 : (a.refs[0] == b.refs[0] ? 0 : 1);
+        }
+    };
+
+    public LruKEvictionPolicy(int k, final int numPages) {
+        m_k = k;
+        m_clock = 0;
+        m_resident = new HashMap<PageId, History>();
+        m_order = new TreeSet<History>(VICTIM_ORDER);
+        m_retained = new LinkedHashMap<PageId, History>() {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<PageId, History> eldest) {
+                return size() > numPages;
+            }
+        };
+    }
+
+    public void pageAdded(PageId pid) {
+        History h = m_retained.remove(pid);
+        if (h == null)
+            h = new History(pid, m_k);
+        h.reference(++m_clock);
+        m_resident.put(pid, h);
+        m_order.add(h);
+    }
+
+    public void pageAccessed(PageId pid) {
+        History h = m_resident.get(pid);
+        if (h == null)
+            return;
+        m_order.remove(h);
+        h.reference(++m_clock);
+        m_order.add(h);
+    }
+
+    public void pageRemoved(PageId pid) {
+        History h = m_resident.remove(pid);
+        if (h == null)
+            return;
+        m_order.remove(h);
+        m_retained.put(pid, h);
+    }
+
+    public PageId chooseVictim(VictimFilter filter) {
+        for (History h : m_order) {
+            if (filter.accept(h.pid))
+                return h.pid;
+        }
+        return null;
+    }
+
+    public List<PageId> victimOrder() {
+        ArrayList<PageId> order = new ArrayList<PageId>(m_order.size());
+        for (History h : m_order)
+            order.add(h.pid);
+        return order;
+    }
+}
@@ -0,0 +1,96 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PageArena is a preallocated block of off-heap memory divided into
+ * fixed-size page frames. A buffer pool running off-heap reads pages
+ * straight into arena frames, and the pages are views over them (see
+ * {@link FramedPage}), so the page images of a large pool are neither
+ * allocated per read nor traced by the garbage collector.
+ * <p>
+ * The arena is allocated as a few direct buffers of at most
+ * {@link #MAX_CHUNK_BYTES} bytes, since a single ByteBuffer cannot exceed
+ * 2 GB.
+ *
+ * @Threadsafe
+ */
+public class PageArena {
+
+    /** Largest single direct buffer the arena allocates. */
+    public static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final int m_frameSize;
+    private final ByteBuffer[] m_frames;
+    private final int[] m_free; //stack of free frame numbers
+    private int m_numFree;
+
+    /**
+     * @param numFrames the number of frames
+     * @param frameSize the size of each frame in bytes
+     */
+    public PageArena(int numFrames, int frameSize) {
+        if (numFrames < 1 || frameSize < 1 || frameSize > MAX_CHUNK_BYTES)
+            throw new IllegalArgumentException("bad arena size");
+        m_frameSize = frameSize;
+        m_frames = new ByteBuffer[numFrames];
+        m_free = new int[numFrames];
+
+        int perChunk = MAX_CHUNK_BYTES / frameSize;
+        for (int first = 0; first < numFrames; first += perChunk) {
+            int n = Math.min(perChunk, numFrames - first);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(n * frameSize);
+            for (int i = 0; i < n; i++) {
+                chunk.limit((i + 1) * frameSize);
+                chunk.position(i * frameSize);
+                m_frames[first + i] = chunk.slice();
+            }
+        }
+        for (int i = 0; i < numFrames; i++)
+            m_free[i] = numFrames - 1 - i;
+        m_numFree = numFrames;
+    }
+
+    /** @return the size of each frame in bytes */
+    public int getFrameSize() {
+        return m_frameSize;
+    }
+
+    /** @return the number of frames in the arena */
+    public int getNumFrames() {
+        return m_frames.length;
+    }
+
+    /** @return the number of frames not allocated */
+    public synchronized int getNumFree() {
+        return m_numFree;
+    }
+
+    /**
+     * Take a free frame.
+     *
+     * @return the frame number, or -1 if every frame is in use
+     */
+    public synchronized int allocate() {
+        if (m_numFree == 0)
+            return -1;
+        return m_free[--m_numFree];
+    }
+
+    /**
+     * @return the buffer of the given frame, positioned at 0 with its limit
+     *   at the frame size
+     */
+    public ByteBuffer frame(int frameNo) {
+        ByteBuffer b = m_frames[frameNo].duplicate();
+        b.clear();
+        return b;
+    }
+
+    /** Return the given frame to the free list. */
+    public synchronized void release(int frameNo) {
+        if (m_numFree == m_free.length)
+            throw new IllegalStateException("frame released twice");
+        m_free[m_numFree++] = frameNo;
+    }
+}
@@ -0,0 +1,108 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of the pages of a HeapFile, chosen per table in the catalog.
+ */
+public enum PageFormat {
+
+    /**
+     * Fixed-size slots behind a bitmap header, see {@link HeapPage}. Space
+     * is counted in slots.
+     */
+    FIXED {
+        public TuplePage newPage(HeapPageId id, ByteBuffer frame) throws IOException {
+            return new HeapPage(id, frame);
+        }
+
+        public int capacity(TupleDesc td, int pageSize) {
+            return (pageSize * 8) / (td.getSize() * 8 + 1);
+        }
+
+        public int spaceNeeded(Tuple t) {
+            return 1;
+        }
+    },
+
+    /**
+     * A slot directory over variable-length records, see
+     * {@link SlottedPage}. Space is counted in bytes.
+     */
+    SLOTTED {
+        public TuplePage newPage(HeapPageId id, ByteBuffer frame) throws IOException {
+            return new SlottedPage(id, frame);
+        }
+
+        public int capacity(TupleDesc td, int pageSize) {
+            return pageSize - SlottedPage.HEADER_SIZE;
+        }
+
+        public int spaceNeeded(Tuple t) {
+            return SlottedPage.recordSize(t) + SlottedPage.SLOT_SIZE;
+        }
+
+        public int getMaxPageSize() {
+            return SlottedPage.MAX_PAGE_SIZE;
+        }
+    },
+
+    /**
+     * As many slots as {@link #FIXED}, with the values stored field by
+     * field, see {@link PaxPage}. Space is counted in slots.
+     */
+    PAX {
+        public TuplePage newPage(HeapPageId id, ByteBuffer frame) throws IOException {
+            return new PaxPage(id, frame);
+        }
+
+        public int capacity(TupleDesc td, int pageSize) {
+            return FIXED.capacity(td, pageSize);
+        }
+
+        public int spaceNeeded(Tuple t) {
+            return 1;
+        }
+    };
+
+    /**
+     * Create a page of this format that views the page image in frame. An
+     * image of all zeroes is an empty page.
+     */
+    public abstract TuplePage newPage(HeapPageId id, ByteBuffer frame) throws IOException;
+
+    /**
+     * @return the free space of an empty page of pageSize bytes of a table
+     *   with schema td
+     */
+    public abstract int capacity(TupleDesc td, int pageSize);
+
+    /**
+     * @return the free space of an empty page of the default size of a
+     *   table with schema td
+     */
+    public int capacity(TupleDesc td) {
+        return capacity(td, BufferPool.getPageSize());
+    }
+
+    /** @return the free space a page needs to take t */
+    public abstract int spaceNeeded(Tuple t);
+
+    /** @return the largest page size, in bytes, this format can address */
+    public int getMaxPageSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the format named by a catalog option, or null if name is not
+     *   one
+     */
+    public static PageFormat forName(String name) {
+        for (PageFormat f : values()) {
+            if (f.name().equalsIgnoreCase(name))
+                return f;
+        }
+        return null;
+    }
+}
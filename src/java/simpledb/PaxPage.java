@@ -0,0 +1,169 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * A page of a HeapFile in the {@link PageFormat#PAX} format, which holds as
+ * many tuples as a {@link HeapPage} but stores them column by column: the
+ * page is split into one minipage per field, holding that field of every
+ * slot in slot order. Reading one field of many tuples, as a filter on that
+ * field does, touches one contiguous run of memory instead of every tuple.
+ * <p>
+ * The page starts with the same bitmap header of used slots as a HeapPage.
+ * The minipages follow in field order; the minipage of field j starts at
+ * the header size plus the number of slots times the sizes of the fields
+ * before j, and the value of field j of slot i is i field sizes into it. An
+ * empty slot is zeroes in every minipage.
+ *
+ * @see PageFormat
+ * @see HeapFile
+ */
+public class PaxPage extends AbstractTuplePage {
+
+    private final Tuple m_tuples[]; //tuples decoded so far, null until a slot is first asked for
+    private final int m_numSlots;
+    private final int m_headerSize;
+    private final int[] m_minipages; //offset of each field's minipage
+    private final SlotBitmap m_slots; //decoded header; written through to the page image
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk, in the
+     * format described above.
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data.clone()));
+    }
+
+    /**
+     * Create a PaxPage that views the page image in frame. The page reads
+     * and writes frame directly, so the caller must not reuse it until the
+     * page has been {@link #detach}ed.
+     */
+    public PaxPage(HeapPageId id, ByteBuffer frame) throws IOException {
+        super(id, frame);
+        m_numSlots = PageFormat.PAX.capacity(td, pageSize);
+        m_headerSize = (m_numSlots + 7) / 8;
+        if (frame.capacity() < m_headerSize + m_numSlots * td.getSize())
+            throw new IOException("page image too short");
+        m_minipages = new int[td.numFields()];
+        int offset = m_headerSize;
+        for (int j = 0; j < m_minipages.length; j++) {
+            m_minipages[j] = offset;
+            offset += m_numSlots * td.getFieldType(j).getLen();
+        }
+        m_slots = new SlotBitmap(frame, 0, m_numSlots);
+        m_tuples = new Tuple[m_numSlots];
+    }
+
+    protected PaxPage newPage(byte[] data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    /** @return the offset of field j of slot i in the page image */
+    private int valueOffset(int i, int j) {
+        return m_minipages[j] + i * td.getFieldType(j).getLen();
+    }
+
+    public int getNumSlots() {
+        return m_numSlots;
+    }
+
+    public int getNumEmptySlots() {
+        return m_numSlots - m_slots.getUsed();
+    }
+
+    /**
+     * @return the number of empty slots, see {@link PageFormat#PAX}
+     */
+    public int getFreeSpace() {
+        return getNumEmptySlots();
+    }
+
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < m_numSlots && m_slots.isSet(i);
+    }
+
+    public int nextUsedSlot(int i) {
+        return m_slots.nextSet(Math.max(i, 0));
+    }
+
+    public synchronized Tuple getTuple(int i) {
+        if (!isSlotUsed(i))
+            return null;
+        Tuple t = m_tuples[i];
+        if (t == null) { //first time anyone asks for this slot
+            t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, i));
+            for (int j = 0; j < td.numFields(); j++)
+                t.setField(j, readField(i, j));
+            m_tuples[i] = t;
+        }
+        return t;
+    }
+
+    /**
+     * Read field j of slot i straight from the field's minipage, without
+     * building the tuple. Scans check a filter's predicate this way, see
+     * {@link Predicate#filter(TuplePage, int)}, so a selective filter reads
+     * the minipage of its field and decodes only the tuples that pass.
+     */
+    public synchronized Field getField(int i, int j) {
+        if (!isSlotUsed(i))
+            return null;
+        Tuple t = m_tuples[i];
+        return t != null ? t.getField(j) : readField(i, j);
+    }
+
+    private Field readField(int i, int j) {
+        ByteBuffer in = image().duplicate();
+        in.clear();
+        in.position(valueOffset(i, j));
+        try {
+            return td.getFieldType(j).parse(in);
+        } catch (java.text.ParseException e) {
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
+
+    /** Write the fields of t, or zeroes if t is null, into slot i. */
+    private void writeSlot(int i, Tuple t) {
+        ByteBuffer out = writableData().duplicate();
+        out.clear();
+        for (int j = 0; j < td.numFields(); j++) {
+            out.position(valueOffset(i, j));
+            if (t != null) {
+                t.getField(j).serialize(out);
+            } else {
+                for (int n = td.getFieldType(j).getLen(); n > 0; n--)
+                    out.put((byte) 0);
+            }
+        }
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("PaxPage: tuple desc mismatch");
+        int slot = m_slots.nextClear(0);
+        if (slot == -1)
+            throw new DbException("PaxPage: no more slot on the page");
+
+        writeSlot(slot, t);
+        t.setRecordId(new RecordId(pid, slot));
+        m_tuples[slot] = t;
+        m_slots.set(slot, true, writableData(), 0);
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException(t + " on wrong page");
+        int slot = rid.tupleno();
+        if (!isSlotUsed(slot))
+            throw new DbException(t + " not used in the page");
+        m_slots.set(slot, false, writableData(), 0);
+        m_tuples[slot] = null;
+        writeSlot(slot, null); //empty slots are all zeroes on disk
+    }
+}
@@ -110,6 +110,18 @@ public class Predicate implements Serializable {
         //return m_operand.compare(m_operator, f);
     }
 
+    /**
+     * Like {@link #filter(Tuple)}, for the tuple in slot of page: only the
+     * field compared is read from the page, so a scan can skip the tuples
+     * that fail without building them.
+     *
+     * @return true if the slot holds a tuple and the comparison is true
+     */
+    public boolean filter(TuplePage page, int slot) {
+    	Field f = page.getField(slot, m_fieldNumber);
+    	return f!=null && f.compare(m_operator, m_operand);
+    }
+
     /**
      * Returns something useful, like "f = field_id op = op_string operand =
      * operand_string
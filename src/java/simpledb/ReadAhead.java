@@ -0,0 +1,144 @@
+package simpledb;
+
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ReadAhead notices when a scan reads the pages of a table in order and
+ * loads the pages after the current one into the buffer pool in the
+ * background, so that the scan finds them resident instead of waiting for a
+ * read on every page.
+ * <p>
+ * The number of pages kept in flight adapts to the speed of the scan. It
+ * doubles whenever the scan reaches a page that is still being read (the
+ * scan is faster than the disk), and halves whenever a page read ahead was
+ * evicted before the scan got to it (the scan is too slow to use them).
+ * <p>
+ * A ReadAhead belongs to one scan and is not thread safe. Its loads are
+ * issued in page order by one task at a time, run on a small pool of daemon
+ * threads shared by all scans, through {@link BufferPool#prefetchPage}.
+ */
+public class ReadAhead {
+
+    /** Pages kept in flight when a sequential run starts. */
+    public static final int INITIAL_WINDOW = 4;
+    /** Upper bound on the pages kept in flight by one scan. */
+    public static final int MAX_WINDOW = 64;
+    /** Number of threads issuing reads for all scans. */
+    public static final int THREADS = 4;
+
+    private static final ExecutorService s_readers =
+        Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "simpledb-readahead");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    private final BufferPool m_pool;
+    private final int m_tableId;
+    private final int m_numPages;
+    private final ScanRing m_ring;
+    private final int m_maxWindow;
+    private final LinkedList<Integer> m_queued; //page numbers to load, guarded by itself
+    private boolean m_draining; //a task is loading m_queued, guarded by m_queued
+
+    private int m_window;
+    private int m_lastPage; //page the scan accessed last
+    private int m_issuedUpTo; //highest page number read ahead in the current run
+
+    /**
+     * @param pool the buffer pool to read into
+     * @param tableId the table being scanned
+     * @param numPages the number of pages in the table
+     * @param ring the scan's ring, or null; read-ahead never runs further
+     *   than half the ring, or it would recycle pages the scan has yet to use
+     */
+    public ReadAhead(BufferPool pool, int tableId, int numPages, ScanRing ring) {
+        m_pool = pool;
+        m_tableId = tableId;
+        m_numPages = numPages;
+        m_ring = ring;
+        int max = Math.min(MAX_WINDOW, Math.max(1, pool.getNumPages() / 4));
+        if (ring != null)
+            max = Math.min(max, Math.max(1, ring.size() / 2));
+        m_maxWindow = max;
+        m_queued = new LinkedList<Integer>();
+        m_window = Math.min(INITIAL_WINDOW, m_maxWindow);
+        m_lastPage = -1;
+        m_issuedUpTo = -1;
+    }
+
+    /** @return the number of pages currently kept in flight ahead of the scan */
+    public int getWindow() {
+        return m_window;
+    }
+
+    /**
+     * Tell the read-ahead that the scan is about to fetch page pgNo. If this
+     * continues a sequential run, the window is adjusted and reads are
+     * started for the pages up to pgNo + window.
+     */
+    public void beforeAccess(int pgNo) {
+        if (pgNo == m_lastPage)
+            return; // the scan is looking at the same page again
+        if (pgNo != m_lastPage + 1) {
+            // not sequential: start over
+            m_lastPage = pgNo;
+            m_issuedUpTo = pgNo;
+            m_window = Math.min(INITIAL_WINDOW, m_maxWindow);
+            return;
+        }
+        m_lastPage = pgNo;
+
+        if (pgNo <= m_issuedUpTo) {
+            PageId pid = new HeapPageId(m_tableId, pgNo);
+            boolean queued;
+            synchronized (m_queued) {
+                queued = m_queued.contains(pgNo);
+            }
+            if (queued || m_pool.isLoading(pid))
+                m_window = Math.min(m_maxWindow, m_window * 2);
+            else if (!m_pool.isCachedOrLoading(pid))
+                m_window = Math.max(1, m_window / 2);
+        }
+
+        int end = Math.min(m_numPages - 1, pgNo + m_window);
+        for (int p = Math.max(m_issuedUpTo + 1, pgNo + 1); p <= end; p++)
+            submit(p);
+        m_issuedUpTo = Math.max(m_issuedUpTo, end);
+    }
+
+    private void submit(int pgNo) {
+        synchronized (m_queued) {
+            m_queued.add(pgNo);
+            if (m_draining)
+                return;
+            m_draining = true;
+        }
+        s_readers.execute(new Runnable() {
+            public void run() {
+                while (true) {
+                    Integer next;
+                    synchronized (m_queued) {
+                        next = m_queued.peek();
+                        if (next == null) {
+                            m_draining = false;
+                            return;
+                        }
+                    }
+                    try {
+                        m_pool.prefetchPage(new HeapPageId(m_tableId, next), m_ring);
+                    } finally {
+                        synchronized (m_queued) {
+                            m_queued.poll();
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
@@ -70,16 +70,7 @@ public class RecordId implements Serializable {
     @Override
     public int hashCode() {
         // some code goes here
-    	int n = m_tupNum,
-        	i = 0;
-        	
-        while(n>0) {
-        	n = n/10;
-        	i++;
-        }
-        
-    	return (int) (m_pgId.hashCode()*Math.pow(10, i)+m_tupNum);
-
+    	return 31 * m_pgId.hashCode() + m_tupNum;
     }
 
 }
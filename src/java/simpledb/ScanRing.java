@@ -0,0 +1,57 @@
+package simpledb;
+
+/**
+ * ScanRing is a buffer access strategy for large sequential scans, modelled
+ * on the PostgreSQL ring buffer. Instead of letting every page it touches go
+ * through the shared replacement policy, a scan that owns a ring recycles a
+ * small, fixed set of frames: once the ring is full, the page read least
+ * recently by the scan is dropped to make room for the next one. The rest of
+ * the buffer pool, and the working set of concurrent queries, is left alone.
+ * <p>
+ * A ring is private to one scan and is only touched by BufferPool while it
+ * holds its own monitor.
+ *
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, ScanRing)
+ */
+public class ScanRing {
+
+    /** Upper bound on the number of frames a single ring may hold. */
+    public static final int MAX_RING_PAGES = 16;
+
+    private final PageId[] m_slots;
+    private int m_next; //slot the next page read by the scan goes into
+
+    /**
+     * Creates a ring sized for the given buffer pool: an eighth of the pool,
+     * but at least one and at most {@link #MAX_RING_PAGES} frames.
+     */
+    public ScanRing(BufferPool pool) {
+        this(Math.min(MAX_RING_PAGES, Math.max(1, pool.getNumPages() / 8)));
+    }
+
+    public ScanRing(int numPages) {
+        m_slots = new PageId[numPages];
+        m_next = 0;
+    }
+
+    public int size() {
+        return m_slots.length;
+    }
+
+    /**
+     * @return the page whose frame will be recycled for the next page this
+     *   scan reads, or null if the ring still has unused slots
+     */
+    PageId nextToRecycle() {
+        return m_slots[m_next];
+    }
+
+    /**
+     * Record that the scan read pid into the slot returned by
+     * {@link #nextToRecycle}, and advance to the next slot.
+     */
+    void add(PageId pid) {
+        m_slots[m_next] = pid;
+        m_next = (m_next + 1) % m_slots.length;
+    }
+}
@@ -0,0 +1,175 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * A HeapFile split into segment files of a fixed number of pages each, so a
+ * table can grow past the size limits of a single file. Segment 0 is the
+ * table file itself and segment k, for k &gt; 0, the table file's name with
+ * "." and k appended. Page pgNo lives in segment pgNo / segmentPages, and a
+ * new segment is created when the last one fills up.
+ * <p>
+ * Segments grow a page at a time. Unlike a plain HeapFile they are not
+ * preallocated by extents, since the number of pages is counted from the
+ * size of the last segment, which preallocated pages would inflate.
+ * <p>
+ * Since the segments cover disjoint ranges of pages, each can be scanned
+ * on its own, see {@link #iterator(TransactionId, int)}.
+ *
+ * @see HeapFile
+ */
+public class SegmentedHeapFile extends HeapFile {
+
+    /** Bytes in a segment of a table created from the catalog. */
+    public static final int DEFAULT_SEGMENT_BYTES = 1 << 30;
+
+    private final int m_segmentPages;
+    private final ArrayList<ChannelCache.Handle> m_segments = new ArrayList<ChannelCache.Handle>(); //guarded by this
+
+    /**
+     * Constructs a segmented heap file whose first segment is f.
+     *
+     * @param pageSize bytes per page
+     * @param segmentPages the number of pages in each segment
+     */
+    public SegmentedHeapFile(File f, TupleDesc td, PageFormat format, int pageSize, int segmentPages) {
+        super(f, td, false, format, pageSize);
+        if (segmentPages <= 0)
+            throw new IllegalArgumentException("segments need at least one page");
+        m_segmentPages = segmentPages;
+        m_segments.add(getHandle());
+        for (int k = 1; segmentFile(f, k).exists(); k++)
+            m_segments.add(Database.getChannelCache().open(segmentFile(f, k)));
+    }
+
+    /**
+     * Constructs a segmented heap file of pages of the default size whose
+     * first segment is f.
+     *
+     * @param segmentPages the number of pages in each segment
+     */
+    public SegmentedHeapFile(File f, TupleDesc td, PageFormat format, int segmentPages) {
+        this(f, td, format, BufferPool.getPageSize(), segmentPages);
+    }
+
+    /**
+     * Constructs a segmented heap file of {@link #DEFAULT_SEGMENT_BYTES}
+     * byte segments whose first segment is f.
+     */
+    public SegmentedHeapFile(File f, TupleDesc td) {
+        this(f, td, PageFormat.FIXED, DEFAULT_SEGMENT_BYTES / BufferPool.getPageSize());
+    }
+
+    /** @return the file of segment k of the table stored in f */
+    public static File segmentFile(File f, int k) {
+        return k == 0 ? f : new File(f.getPath() + "." + k);
+    }
+
+    /** @return the number of pages in each segment */
+    public int getSegmentPages() {
+        return m_segmentPages;
+    }
+
+    /** @return the number of segment files of the table */
+    public synchronized int getNumSegments() {
+        return m_segments.size();
+    }
+
+    /**
+     * @return the handle of segment k, creating the segment if it is the
+     *   one after the last
+     */
+    private synchronized ChannelCache.Handle segment(int k) {
+        if (k == m_segments.size())
+            m_segments.add(Database.getChannelCache().open(segmentFile(getFile(), k)));
+        if (k > m_segments.size())
+            throw new IllegalArgumentException("segment " + k + " is past the end of " + getFile());
+        return m_segments.get(k);
+    }
+
+    /**
+     * Returns an iterator over the tuples of segment k only. The iterators of
+     * the segments together return the tuples of {@link #iterator(TransactionId)}.
+     */
+    public DbFileIterator iterator(TransactionId tid, int k) {
+        int first = k * m_segmentPages;
+        int end = Math.max(first, Math.min(first + m_segmentPages, numPages()));
+        return new HeapFileIterator(tid, this, first, end);
+    }
+
+    /** @return the offset of page pgNo in its segment */
+    private long segmentOffset(int pgNo) {
+        return (long) getPageSize() * (pgNo % m_segmentPages);
+    }
+
+    // see HeapFile.java for javadocs
+    public int numPages() {
+        ChannelCache.Handle last;
+        int full;
+        synchronized (this) {
+            full = m_segments.size() - 1;
+            last = m_segments.get(full);
+        }
+        try {
+            FileChannel fc = last.acquire();
+            try {
+                return full * m_segmentPages + (int) (fc.size() / getPageSize());
+            } finally {
+                last.release();
+            }
+        } catch (IOException e) {
+            System.err.println("error counting the number of pages");
+            System.exit(1);
+        }
+        return 0;
+    }
+
+    // see HeapFile.java for javadocs
+    protected void readImage(int pgNo, ByteBuffer dst) throws IOException {
+        ChannelCache.Handle h = segment(pgNo / m_segmentPages);
+        long offset = segmentOffset(pgNo) - dst.position();
+        FileChannel fc = h.acquire();
+        try {
+            while (dst.hasRemaining() && fc.read(dst, offset + dst.position()) >= 0) {
+                //short reads happen on some channels; keep going until the page is full
+            }
+        } finally {
+            h.release();
+        }
+    }
+
+    // see HeapFile.java for javadocs
+    protected void writeImages(int firstPgNo, ByteBuffer images) throws IOException {
+        int pgNo = firstPgNo;
+        while (images.hasRemaining()) {
+            //write up to the end of the segment holding pgNo
+            int pages = Math.min(images.remaining() / getPageSize(), m_segmentPages - pgNo % m_segmentPages);
+            ByteBuffer run = images.duplicate();
+            run.limit(run.position() + pages * getPageSize());
+            ChannelCache.Handle h = segment(pgNo / m_segmentPages);
+            long offset = segmentOffset(pgNo) - run.position();
+            FileChannel fc = h.acquire();
+            try {
+                while (run.hasRemaining())
+                    fc.write(run, offset + run.position());
+            } finally {
+                h.release();
+            }
+            images.position(run.limit());
+            pgNo += pages;
+        }
+    }
+
+    // see HeapFile.java for javadocs
+    protected void force() throws IOException {
+        ChannelCache.Handle[] segments;
+        synchronized (this) {
+            segments = m_segments.toArray(new ChannelCache.Handle[0]);
+        }
+        for (ChannelCache.Handle h : segments)
+            force(h);
+    }
+}
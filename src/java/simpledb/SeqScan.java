@@ -16,6 +16,7 @@ public class SeqScan implements DbIterator {
     private String m_tabAlias;
     private DbFile m_file;
     private DbFileIterator m_itr;
+    private Predicate m_predicate; //checked on the pages of a heap file before tuples are built, or null
     
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -84,15 +85,33 @@ public class SeqScan implements DbIterator {
 
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
-    	HeapFile hf;
-    	try {
-    		hf = (HeapFile) m_file;
-    	} catch(ClassCastException e) {
-    		throw new DbException("Not a heap file");
-    	}
-    	m_itr = new HeapFileIterator(m_trId, hf);
+    	m_itr = newIterator(m_trId);
     	m_itr.open();
     }
+    
+    /**
+     * Return only the tuples that pass p from now on. Heap files check p on
+     * each page, reading just the field it compares, so the tuples that
+     * fail are never built; see {@link Predicate#filter(TuplePage, int)}.
+     * Takes effect the next time the scan is opened.
+     *
+     * @return whether the scan applies p; if not, the caller must
+     */
+    public boolean pushDown(Predicate p) {
+    	if(!(m_file instanceof HeapFile) || (m_predicate!=null && m_predicate!=p))
+    		return false;
+    	m_predicate = p;
+    	return true;
+    }
+
+    /**
+     * @return a new iterator over the tuples this scan returns
+     */
+    protected DbFileIterator newIterator(TransactionId tid) {
+    	if(m_file instanceof HeapFile)
+    		return new HeapFileIterator(tid, (HeapFile) m_file, m_predicate);
+    	return m_file.iterator(tid);
+    }
 
     /**
      * Returns the TupleDesc with field names from the underlying HeapFile,
@@ -49,6 +49,13 @@ public class SimpleDb {
         } catch (IOException e) {
                 throw new RuntimeException(e);
         }
+        } else if (args[0].equals("compress")) {
+            if (args.length<2 || args.length>3) {
+                System.err.println("Unexpected number of arguments to compress ");
+                return;
+            }
+            int pageSize = args.length==3 ? Integer.parseInt(args[2]) : BufferPool.getPageSize();
+            CompressedHeapFile.compress(new File(args[1]), pageSize);
         } else if (args[0].equals("print")) {
             File tableFile = new File(args[1]);
             int columns = Integer.parseInt(args[2]);
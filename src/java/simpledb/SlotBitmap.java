@@ -0,0 +1,107 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SlotBitmap tracks which slots of a page are in use, one bit per slot,
+ * packed into 64-bit words so that counting used slots and finding the next
+ * used or free slot look at 64 slots per step ({@link Long#bitCount},
+ * {@link Long#numberOfTrailingZeros}). The number of used slots is cached.
+ * <p>
+ * On disk, the bitmap is the page header: slot i is bit i % 8 of byte i / 8.
+ * That is the little-endian layout of the words, so the header is decoded
+ * a byte at a time into the words once, and each change is written back to
+ * the header byte it touches.
+ */
+public class SlotBitmap {
+
+    private final long[] m_words;
+    private final int m_numSlots;
+    private int m_used;
+
+    /**
+     * Decode the bitmap of numSlots slots from the header bytes of page,
+     * starting at offset.
+     */
+    public SlotBitmap(ByteBuffer page, int offset, int numSlots) {
+        m_numSlots = numSlots;
+        m_words = new long[(numSlots + 63) >>> 6];
+        int headerBytes = (numSlots + 7) >>> 3;
+        for (int b = 0; b < headerBytes; b++)
+            m_words[b >>> 3] |= (page.get(offset + b) & 0xFFL) << ((b & 7) << 3);
+        // bits past the last slot are not slots
+        if ((numSlots & 63) != 0)
+            m_words[m_words.length - 1] &= (1L << (numSlots & 63)) - 1;
+        int used = 0;
+        for (long w : m_words)
+            used += Long.bitCount(w);
+        m_used = used;
+    }
+
+    /** @return the number of slots */
+    public int size() {
+        return m_numSlots;
+    }
+
+    /** @return the number of used slots */
+    public int getUsed() {
+        return m_used;
+    }
+
+    public boolean isSet(int slot) {
+        return (m_words[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Mark slot used or free, and write the header byte holding its bit to
+     * page at offset + slot / 8.
+     */
+    public void set(int slot, boolean used, ByteBuffer page, int offset) {
+        int w = slot >>> 6;
+        long mask = 1L << slot;
+        boolean was = (m_words[w] & mask) != 0;
+        if (was == used)
+            return;
+        if (used) {
+            m_words[w] |= mask;
+            m_used++;
+        } else {
+            m_words[w] &= ~mask;
+            m_used--;
+        }
+        int b = slot >>> 3;
+        page.put(offset + b, (byte) (m_words[w] >>> ((b & 7) << 3)));
+    }
+
+    /** @return the first used slot at or after from, or -1 */
+    public int nextSet(int from) {
+        if (from >= m_numSlots)
+            return -1;
+        int w = from >>> 6;
+        long word = m_words[w] & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == m_words.length)
+                return -1;
+            word = m_words[w];
+        }
+    }
+
+    /** @return the first free slot at or after from, or -1 */
+    public int nextClear(int from) {
+        if (from >= m_numSlots)
+            return -1;
+        int w = from >>> 6;
+        long word = ~m_words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int slot = (w << 6) + Long.numberOfTrailingZeros(word);
+                return slot < m_numSlots ? slot : -1;
+            }
+            if (++w == m_words.length)
+                return -1;
+            word = ~m_words[w];
+        }
+    }
+}
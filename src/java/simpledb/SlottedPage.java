@@ -0,0 +1,303 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A page of a HeapFile in the {@link PageFormat#SLOTTED} format, which
+ * stores each tuple in just the bytes it needs: strings take their length,
+ * not {@link Type#STRING_LEN}.
+ * <p>
+ * The page starts with a header of two unsigned shorts: the number of
+ * entries in the slot directory, and the offset where the record area
+ * begins (0 standing for the page size, so that a page of zeroes is empty).
+ * The slot directory follows the header, one entry of two unsigned shorts
+ * per slot: the offset and length of the slot's record, with an offset of 0
+ * marking an empty slot. Records are packed at the end of the page and grow
+ * towards the directory. Within a record an int takes 4 bytes and a string
+ * an unsigned short length followed by one byte per character.
+ * <p>
+ * Deleting a tuple leaves a hole in the record area; the holes are
+ * reclaimed by compacting the records when an insert needs the space.
+ * Slot numbers never change, so RecordIds stay valid.
+ *
+ * @see PageFormat
+ * @see HeapFile
+ */
+public class SlottedPage extends AbstractTuplePage {
+
+    /** Bytes of the page header. */
+    public static final int HEADER_SIZE = 4;
+
+    /** Bytes of each slot directory entry. */
+    public static final int SLOT_SIZE = 4;
+
+    /** Largest page size; offsets and lengths are unsigned shorts. */
+    public static final int MAX_PAGE_SIZE = 1 << 16;
+
+    private final int m_pageSize;
+    private int m_numSlots; //entries in the slot directory
+    private int m_dataStart; //offset of the first record byte
+    private int m_used; //slots holding a record
+    private int m_usedBytes; //bytes of the records on the page
+    private Tuple m_tuples[]; //tuples decoded so far, null until a slot is first asked for
+
+    /**
+     * Create a SlottedPage from a set of bytes of data read from disk, in
+     * the format described above.
+     */
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data.clone()));
+    }
+
+    /**
+     * Create a SlottedPage that views the page image in frame. The page
+     * reads and writes frame directly, so the caller must not reuse it until
+     * the page has been {@link #detach}ed.
+     */
+    public SlottedPage(HeapPageId id, ByteBuffer frame) throws IOException {
+        super(id, frame);
+        m_pageSize = pageSize;
+        if (m_pageSize > MAX_PAGE_SIZE)
+            throw new IOException("slotted pages of " + m_pageSize + " bytes do not fit 16-bit offsets");
+        if (frame.capacity() < m_pageSize)
+            throw new IOException("page image too short");
+        m_numSlots = frame.getShort(0) & 0xffff;
+        m_dataStart = frame.getShort(2) & 0xffff;
+        if (m_dataStart == 0)
+            m_dataStart = m_pageSize;
+        if (HEADER_SIZE + m_numSlots * SLOT_SIZE > m_dataStart || m_dataStart > m_pageSize)
+            throw new IOException("corrupt slotted page " + id);
+        for (int i = 0; i < m_numSlots; i++) {
+            int off = offset(i);
+            if (off == 0)
+                continue;
+            if (off < m_dataStart || off + length(i) > m_pageSize)
+                throw new IOException("corrupt slot " + i + " on page " + id);
+            m_used++;
+            m_usedBytes += length(i);
+        }
+        m_tuples = new Tuple[m_numSlots];
+    }
+
+    protected SlottedPage newPage(byte[] data) throws IOException {
+        return new SlottedPage(pid, data);
+    }
+
+    /** @return the number of bytes t takes in the record area */
+    public static int recordSize(Tuple t) {
+        int size = 0;
+        TupleDesc td = t.getTupleDesc();
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE)
+                size += 2 + Math.min(((StringField) t.getField(j)).getValue().length(), Type.STRING_LEN);
+            else
+                size += td.getFieldType(j).getLen();
+        }
+        return size;
+    }
+
+    private int offset(int slot) {
+        return image().getShort(HEADER_SIZE + slot * SLOT_SIZE) & 0xffff;
+    }
+
+    private int length(int slot) {
+        return image().getShort(HEADER_SIZE + slot * SLOT_SIZE + 2) & 0xffff;
+    }
+
+    private static void setSlot(ByteBuffer data, int slot, int offset, int length) {
+        data.putShort(HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+        data.putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+    }
+
+    private void writeHeader(ByteBuffer data) {
+        data.putShort(0, (short) m_numSlots);
+        data.putShort(2, (short) (m_dataStart == m_pageSize ? 0 : m_dataStart));
+    }
+
+    /** @return the number of slots, including empty ones, in the directory */
+    public int getNumSlots() {
+        return m_numSlots;
+    }
+
+    public int getNumEmptySlots() {
+        return m_numSlots - m_used;
+    }
+
+    /**
+     * @return the bytes a new record and its directory entry can take, see
+     *   {@link PageFormat#SLOTTED}
+     */
+    public int getFreeSpace() {
+        return m_pageSize - HEADER_SIZE - m_numSlots * SLOT_SIZE - m_usedBytes;
+    }
+
+    public synchronized boolean isSlotUsed(int i) {
+        return i >= 0 && i < m_numSlots && offset(i) != 0;
+    }
+
+    public synchronized int nextUsedSlot(int i) {
+        for (int slot = Math.max(i, 0); slot < m_numSlots; slot++) {
+            if (offset(slot) != 0)
+                return slot;
+        }
+        return -1;
+    }
+
+    public synchronized Tuple getTuple(int i) {
+        if (!isSlotUsed(i))
+            return null;
+        Tuple t = m_tuples[i];
+        if (t == null) { //first time anyone asks for this slot
+            t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, i));
+            ByteBuffer in = record(i);
+            for (int j = 0; j < td.numFields(); j++)
+                t.setField(j, readField(in, td.getFieldType(j)));
+            m_tuples[i] = t;
+        }
+        return t;
+    }
+
+    public synchronized Field getField(int i, int j) {
+        if (!isSlotUsed(i))
+            return null;
+        Tuple t = m_tuples[i];
+        if (t != null)
+            return t.getField(j);
+        ByteBuffer in = record(i);
+        for (int k = 0; k < j; k++) {
+            if (td.getFieldType(k) == Type.STRING_TYPE) {
+                int len = in.getShort() & 0xffff;
+                in.position(in.position() + len);
+            } else
+                in.position(in.position() + td.getFieldType(k).getLen());
+        }
+        return readField(in, td.getFieldType(j));
+    }
+
+    /** @return a buffer positioned at the record in slot i */
+    private ByteBuffer record(int i) {
+        ByteBuffer in = image().duplicate();
+        in.clear();
+        in.position(offset(i));
+        in.limit(offset(i) + length(i));
+        return in;
+    }
+
+    private static Field readField(ByteBuffer in, Type type) {
+        try {
+            if (type == Type.STRING_TYPE) {
+                int len = in.getShort() & 0xffff;
+                if (len > Type.STRING_LEN)
+                    throw new NoSuchElementException("parsing error!");
+                byte bs[] = new byte[len];
+                in.get(bs);
+                return new StringField(new String(bs), Type.STRING_LEN);
+            }
+            return type.parse(in);
+        } catch (java.text.ParseException e) {
+            throw new NoSuchElementException("parsing error!");
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
+
+    private static void writeRecord(ByteBuffer out, Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                String s = ((StringField) t.getField(j)).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                out.putShort((short) len);
+                for (int i = 0; i < len; i++)
+                    out.put((byte) s.charAt(i)); // low byte, as StringField.serialize
+            } else {
+                t.getField(j).serialize(out);
+            }
+        }
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("SlottedPage: tuple desc mismatch");
+
+        int len = recordSize(t);
+        int slot = 0;
+        while (slot < m_numSlots && offset(slot) != 0)
+            slot++;
+        int newSlots = slot == m_numSlots ? 1 : 0;
+        if (len + newSlots * SLOT_SIZE > getFreeSpace())
+            throw new DbException("SlottedPage: no room for the tuple");
+        int dirEnd = HEADER_SIZE + (m_numSlots + newSlots) * SLOT_SIZE;
+
+        ByteBuffer data = writableData();
+        if (m_dataStart - len < dirEnd)
+            compact(data);
+        m_dataStart -= len;
+        ByteBuffer out = data.duplicate();
+        out.clear();
+        out.position(m_dataStart);
+        writeRecord(out, t);
+
+        if (slot == m_numSlots) {
+            m_numSlots++;
+            if (m_tuples.length < m_numSlots)
+                m_tuples = Arrays.copyOf(m_tuples, Math.max(m_numSlots, m_tuples.length * 2));
+        }
+        setSlot(data, slot, m_dataStart, len);
+        writeHeader(data);
+        m_used++;
+        m_usedBytes += len;
+
+        t.setRecordId(new RecordId(pid, slot));
+        m_tuples[slot] = t;
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException(t + " on wrong page");
+        int slot = rid.tupleno();
+        if (!isSlotUsed(slot))
+            throw new DbException(t + " not used in the page");
+
+        ByteBuffer data = writableData();
+        int len = length(slot);
+        if (offset(slot) == m_dataStart) // the last record in, so its space is free right away
+            m_dataStart += len;
+        setSlot(data, slot, 0, 0);
+        m_tuples[slot] = null;
+        m_used--;
+        m_usedBytes -= len;
+        while (m_numSlots > 0 && offset(m_numSlots - 1) == 0) // trailing empty slots are not needed
+            m_numSlots--;
+        if (m_used == 0)
+            m_dataStart = m_pageSize;
+        writeHeader(data);
+    }
+
+    /**
+     * Move the records to the end of the page, closing the holes left by
+     * deleted tuples.
+     */
+    private void compact(ByteBuffer data) {
+        byte[] old = getPageData();
+        int end = m_pageSize;
+        for (int i = 0; i < m_numSlots; i++) {
+            int off = offset(i);
+            if (off == 0)
+                continue;
+            int len = length(i);
+            end -= len;
+            ByteBuffer out = data.duplicate();
+            out.clear();
+            out.position(end);
+            out.put(old, off, len);
+            setSlot(data, i, end, len);
+        }
+        m_dataStart = end;
+    }
+}
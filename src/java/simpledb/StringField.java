@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
@@ -12,6 +13,9 @@ public class StringField implements Field {
 	private final String value;
 	private final int maxSize;
 
+	/** Source of padding bytes. */
+	private static final byte[] ZEROES = new byte[Type.STRING_LEN];
+
 	public String getValue() {
 		return value;
 	}
@@ -62,8 +66,28 @@ public class StringField implements Field {
 		}
 		dos.writeInt(s.length());
 		dos.writeBytes(s);
-		while (overflow-- > 0)
-			dos.write((byte) 0);
+		while (overflow > 0) {
+			int n = Math.min(overflow, ZEROES.length);
+			dos.write(ZEROES, 0, n);
+			overflow -= n;
+		}
+	}
+
+	/**
+	 * Write this string to buf, in the format of
+	 * {@link #serialize(DataOutputStream)}, without allocating.
+	 */
+	public void serialize(ByteBuffer buf) {
+		int len = Math.min(value.length(), maxSize);
+		buf.putInt(len);
+		for (int i = 0; i < len; i++)
+			buf.put((byte) value.charAt(i)); // low byte, as DataOutputStream.writeBytes
+		int overflow = maxSize - len;
+		while (overflow > 0) {
+			int n = Math.min(overflow, ZEROES.length);
+			buf.put(ZEROES, 0, n);
+			overflow -= n;
+		}
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -39,7 +40,7 @@ public class TableStats {
 	
 	private int m_cost; //cost per page
 	private int m_numFields;
-    private HeapFile m_file; //a file corresponding to the relation
+    private DbFile m_file; //a file corresponding to the relation
     private HistogramBundle[] m_histograms; // there is one histogram per field in the relation	
 
     
@@ -115,7 +116,7 @@ public class TableStats {
         // necessarily have to (for example) do everything
         // in a single scan of the table.
         // some code goes here
-    	m_file = (HeapFile) Database.getCatalog().getDatabaseFile(tableid);
+    	m_file = Database.getCatalog().getDatabaseFile(tableid);
     	m_cost = ioCostPerPage;
     	m_numFields = m_file.getTupleDesc().numFields();
     	m_histograms = new HistogramBundle[m_numFields];
@@ -128,12 +129,20 @@ public class TableStats {
     public void initHistogramBundles() {
     	try {
     		TransactionId currTr = new TransactionId();
-        	DbFileIterator itr = m_file.iterator(currTr);
+        	//both passes go through a scan ring so they don't flush the buffer pool
+        	DbFileIterator itr = m_file instanceof HeapFile
+        		? new HeapFileIterator(currTr, (HeapFile) m_file, true)
+        		: m_file.iterator(currTr);
         	itr.open();
         	
     		initMinMax(itr);
     		initHistograms();
     		fillHistograms(itr);
+    		itr.close();
+    		Database.getBufferPool().transactionComplete(currTr); //release the shared locks of the scans
+    	} catch(IOException ie) {
+    		System.err.println("TableStats: initHistogramBundles - IOException");
+            System.exit(1);
     	} catch(DbException be) {
     		System.err.println("TableStats: initHistogramBundles - DbException");
             System.exit(1);
@@ -235,7 +244,8 @@ public class TableStats {
      */
     public double estimateScanCost() {
         // some code goes here
-        return m_file.numPages() * m_cost;
+        //ioCostPerPage is the cost of a page of the default size; larger pages take longer to read
+        return m_file.numPages() * m_cost * ((double) m_file.getPageSize() / BufferPool.getPageSize());
     }
 
     /**
@@ -0,0 +1,69 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * A page of a HeapFile: a set of numbered slots holding tuples. The slot
+ * number of a tuple is the tupleno of its RecordId and does not change while
+ * the tuple is on the page.
+ * <p>
+ * How much room a page has is measured in units of the page's
+ * {@link PageFormat}, see {@link PageFormat#spaceNeeded}.
+ *
+ * @see HeapPage
+ * @see SlottedPage
+ * @see PaxPage
+ */
+public interface TuplePage extends Page {
+
+    public HeapPageId getId();
+
+    /** @return the number of slots on this page, used or not */
+    public int getNumSlots();
+
+    /** @return the number of slots on this page that hold no tuple */
+    public int getNumEmptySlots();
+
+    /** @return true if slot i holds a tuple */
+    public boolean isSlotUsed(int i);
+
+    /** @return the first used slot at or after slot i, or -1 if there is none */
+    public int nextUsedSlot(int i);
+
+    /** @return the tuple in slot i, or null if the slot is empty or out of range */
+    public Tuple getTuple(int i);
+
+    /**
+     * @return field j of the tuple in slot i, or null if the slot is empty
+     *   or out of range
+     * @see Predicate#filter(TuplePage, int)
+     */
+    public Field getField(int i, int j);
+
+    /**
+     * Add the tuple to the page, setting its RecordId.
+     *
+     * @throws DbException if the page has no room for it or its TupleDesc
+     *   does not match
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Delete the tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return the free space on this page; an insert succeeds if this is at
+     *   least the space the tuple needs
+     */
+    public int getFreeSpace();
+
+    /**
+     * @return an iterator over the tuples on this page (calling remove on
+     *   this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator();
+}
@@ -0,0 +1,92 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Full 2Q replacement (Johnson and Shasha). Pages referenced once live in a
+ * FIFO (A1in); when they fall out of it only their id is remembered in a
+ * ghost queue (A1out). A page that is requested again while its id is still
+ * in A1out is promoted to the main LRU queue (Am). One-off accesses, such as
+ * a join scanning its inner relation once, therefore never push hot pages out
+ * of Am.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+
+    private final int m_kin;  //target size of A1in
+    private final int m_kout; //maximum size of A1out
+
+    private LinkedHashSet<PageId> m_a1in;
+    private LinkedHashSet<PageId> m_a1out;
+    private LinkedHashSet<PageId> m_am;
+
+    public TwoQueueEvictionPolicy(int numPages) {
+        m_kin = Math.max(1, numPages / 4);
+        m_kout = Math.max(1, numPages / 2);
+        m_a1in = new LinkedHashSet<PageId>();
+        m_a1out = new LinkedHashSet<PageId>();
+        m_am = new LinkedHashSet<PageId>();
+    }
+
+    public void pageAdded(PageId pid) {
+        if (m_a1out.remove(pid))
+            m_am.add(pid);
+        else
+            m_a1in.add(pid);
+    }
+
+    public void pageAccessed(PageId pid) {
+        // hits in A1in are deliberately ignored: they are correlated references
+        if (m_am.remove(pid))
+            m_am.add(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        if (m_a1in.remove(pid)) {
+            m_a1out.add(pid);
+            if (m_a1out.size() > m_kout) {
+                Iterator<PageId> it = m_a1out.iterator();
+                it.next();
+                it.remove();
+            }
+        } else {
+            m_am.remove(pid);
+        }
+    }
+
+    public PageId chooseVictim(VictimFilter filter) {
+        PageId victim = null;
+        if (m_a1in.size() > m_kin || m_am.isEmpty()) {
+            victim = firstAccepted(m_a1in, filter);
+            if (victim == null)
+                victim = firstAccepted(m_am, filter);
+        } else {
+            victim = firstAccepted(m_am, filter);
+            if (victim == null)
+                victim = firstAccepted(m_a1in, filter);
+        }
+        return victim;
+    }
+
+    public List<PageId> victimOrder() {
+        ArrayList<PageId> order = new ArrayList<PageId>(m_a1in.size() + m_am.size());
+        if (m_a1in.size() > m_kin || m_am.isEmpty()) {
+            order.addAll(m_a1in);
+            order.addAll(m_am);
+        } else {
+            order.addAll(m_am);
+            order.addAll(m_a1in);
+        }
+        return order;
+    }
+
+    private static PageId firstAccepted(LinkedHashSet<PageId> queue, VictimFilter filter) {
+        for (PageId pid : queue) {
+            if (filter.accept(pid))
+                return pid;
+        }
+        return null;
+    }
+}
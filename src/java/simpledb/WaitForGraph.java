@@ -0,0 +1,101 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * WaitForGraph tracks which transactions are blocked on locks held by which
+ * other transactions. An edge T1 -> T2 means T1 is waiting for a lock T2
+ * holds. The graph is updated whenever a wait begins or its set of blockers
+ * changes, and is checked for cycles right then: any new cycle must pass
+ * through the transaction whose edges just changed, so only that
+ * transaction's reachable set needs to be searched.
+ * <p>
+ * When a cycle is found, the youngest transaction on it (the one with the
+ * largest id) is chosen as the victim. If the victim is some other waiting
+ * transaction, its thread is interrupted so it can abort itself.
+ *
+ * @Threadsafe
+ * @see LockManager
+ */
+public class WaitForGraph {
+
+    private final HashMap<TransactionId, Set<TransactionId>> m_edges;
+    private final HashMap<TransactionId, Thread> m_waiters;
+    private final HashSet<TransactionId> m_victims;
+
+    public WaitForGraph() {
+        m_edges = new HashMap<TransactionId, Set<TransactionId>>();
+        m_waiters = new HashMap<TransactionId, Thread>();
+        m_victims = new HashSet<TransactionId>();
+    }
+
+    /**
+     * Record that tid, running on the calling thread, is now waiting for the
+     * given holders, and look for a deadlock.
+     *
+     * @return the transaction chosen as deadlock victim, or null if tid is
+     *   not part of a cycle
+     */
+    public synchronized TransactionId waitFor(TransactionId tid, Set<TransactionId> holders) {
+        m_edges.put(tid, new HashSet<TransactionId>(holders));
+        m_waiters.put(tid, Thread.currentThread());
+
+        HashSet<TransactionId> cycle = new HashSet<TransactionId>();
+        if (!findCycle(tid, tid, new HashSet<TransactionId>(), cycle))
+            return null;
+
+        TransactionId victim = tid;
+        for (TransactionId t : cycle) {
+            if (t.getId() > victim.getId())
+                victim = t;
+        }
+        // drop the victim's edges right away so the cycle isn't reported twice
+        m_edges.remove(victim);
+        if (!victim.equals(tid)) {
+            m_victims.add(victim);
+            Thread t = m_waiters.get(victim);
+            if (t != null)
+                t.interrupt();
+        }
+        return victim;
+    }
+
+    /**
+     * Depth first search for a path from current back to start; the
+     * transactions on the path are added to cycle.
+     */
+    private boolean findCycle(TransactionId start, TransactionId current,
+                              HashSet<TransactionId> visited, HashSet<TransactionId> cycle) {
+        Set<TransactionId> next = m_edges.get(current);
+        if (next == null)
+            return false;
+        for (TransactionId t : next) {
+            if (t.equals(start) || (visited.add(t) && findCycle(start, t, visited, cycle))) {
+                cycle.add(current);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that tid stopped waiting, either because it got its lock or
+     * because it is giving up.
+     */
+    public synchronized void doneWaiting(TransactionId tid) {
+        m_edges.remove(tid);
+        m_waiters.remove(tid);
+        if (m_victims.remove(tid)) {
+            // the interrupt was only meant to wake the wait; it must not leak
+            // into whatever the thread does next (it would close file channels)
+            Thread.interrupted();
+        }
+    }
+
+    /** @return true if tid has been chosen as a deadlock victim */
+    public synchronized boolean isVictim(TransactionId tid) {
+        return m_victims.contains(tid);
+    }
+}
@@ -0,0 +1,85 @@
+package simpledb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BackgroundWriterTest extends TestUtil.CreateHeapFile {
+    private TransactionId tid;
+    private BufferPool bp;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        bp = Database.resetBufferPool(10);
+        // drive the writer by hand rather than racing the daemon
+        if (Database.getBackgroundWriter() != null)
+            Database.getBackgroundWriter().shutdown();
+        tid = new TransactionId();
+        // dirty four pages
+        for (int i = 0; i < 4 * 504; ++i)
+            bp.insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        assertEquals(4, bp.getDirtyPageCount());
+    }
+
+    @After public void tearDown() throws Exception {
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for BackgroundWriter.writeRound(): writing starts above the
+     * high watermark, is rate limited, and stops at the low watermark.
+     */
+    @Test public void watermarks() throws Exception {
+        BackgroundWriter writer = new BackgroundWriter(bp, 0.2, 0.1, 1, 1000);
+        int records = Database.getLogFile().getTotalRecords();
+
+        assertEquals(1, writer.writeRound());
+        assertEquals(3, bp.getDirtyPageCount());
+        assertEquals(1, writer.writeRound());
+        assertEquals(1, writer.writeRound());
+        assertEquals(1, bp.getDirtyPageCount());
+        assertEquals(0, writer.writeRound());
+        assertEquals(3, writer.getPagesWritten());
+
+        // every page written was logged first
+        assertEquals(records + 3, Database.getLogFile().getTotalRecords());
+    }
+
+    /**
+     * Unit test for BackgroundWriter.writeRound() below the high watermark
+     */
+    @Test public void belowHighWatermark() throws Exception {
+        BackgroundWriter writer = new BackgroundWriter(bp, 0.5, 0.1, 10, 1000);
+        assertEquals(0, writer.writeRound());
+        assertEquals(4, bp.getDirtyPageCount());
+    }
+
+    /**
+     * Unit test for abort after the writer stole uncommitted pages
+     */
+    @Test public void abortRestoresWrittenPages() throws Exception {
+        new BackgroundWriter(bp, 0.2, 0.0, 10, 1000).writeRound();
+        assertEquals(0, bp.getDirtyPageCount());
+        bp.transactionComplete(tid, false);
+
+        TransactionId t = new TransactionId();
+        DbFileIterator it = empty.iterator(t);
+        it.open();
+        assertFalse(it.hasNext());
+        it.close();
+        bp.transactionComplete(t);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BackgroundWriterTest.class);
+    }
+}
@@ -1,7 +1,9 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import junit.framework.Assert;
@@ -69,6 +71,46 @@ public class CatalogTest extends SimpleDbTestBase {
         assertEquals(-1, f.getId());
     }
 
+    /**
+     * Unit test for Catalog.addTable() replacing the table of the same name
+     * or the same id
+     */
+    @Test public void addTableReplaces() throws Exception {
+        Catalog c = Database.getCatalog();
+        c.addTable(new SkeletonFile(-3, Utility.getTupleDesc(3)), name, "pk");
+        assertEquals(-3, c.getTableId(name));
+        assertEquals("pk", c.getPrimaryKey(-3));
+        assertEquals(null, c.getTableName(-2));
+        try {
+            c.getDatabaseFile(-2);
+            Assert.fail("Should not find the replaced table");
+        } catch (NoSuchElementException e) {
+            // Expected to get here
+        }
+
+        c.addTable(new SkeletonFile(-3, Utility.getTupleDesc(4)), "renamed");
+        assertEquals("renamed", c.getTableName(-3));
+        assertEquals(Utility.getTupleDesc(4), c.getTupleDesc(-3));
+        try {
+            c.getTableId(name);
+            Assert.fail("Should not find the old name");
+        } catch (NoSuchElementException e) {
+            // Expected to get here
+        }
+    }
+
+    /**
+     * Unit test for Catalog.tableIdIterator(), which lists the tables in
+     * the order they were added and is unaffected by later additions
+     */
+    @Test public void tableIdIterator() throws Exception {
+        Iterator<Integer> it = Database.getCatalog().tableIdIterator();
+        Database.getCatalog().addTable(new SkeletonFile(-4, Utility.getTupleDesc(2)));
+        assertEquals(Integer.valueOf(-1), it.next());
+        assertEquals(Integer.valueOf(-2), it.next());
+        assertFalse(it.hasNext());
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,107 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ChannelCacheTest extends SimpleDbTestBase {
+
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("channels", ".dat");
+        f.deleteOnExit();
+        return f;
+    }
+
+    /**
+     * Unit test for ChannelCache.Handle.acquire(), which closes the least
+     * recently used channel once too many are open
+     */
+    @Test public void leastRecentlyUsed() throws Exception {
+        ChannelCache cache = new ChannelCache(2);
+        ChannelCache.Handle[] handles = new ChannelCache.Handle[3];
+        FileChannel[] channels = new FileChannel[3];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = cache.open(tempFile());
+            channels[i] = handles[i].acquire();
+            channels[i].write(ByteBuffer.wrap(new byte[] { (byte) i }), 0);
+            handles[i].release();
+            if (i == 1) { // 0 is now more recent than 1
+                handles[0].acquire();
+                handles[0].release();
+            }
+        }
+        assertEquals(2, cache.getNumOpen());
+        assertTrue(channels[0].isOpen());
+        assertFalse(channels[1].isOpen());
+        assertTrue(channels[2].isOpen());
+
+        // a closed file is reopened on its next use
+        FileChannel reopened = handles[1].acquire();
+        assertNotSame(channels[1], reopened);
+        ByteBuffer b = ByteBuffer.allocate(1);
+        reopened.read(b, 0);
+        assertEquals(1, b.get(0));
+        handles[1].release();
+        assertEquals(2, cache.getNumOpen());
+    }
+
+    /**
+     * Borrowed channels stay open past the limit until they are released
+     */
+    @Test public void borrowed() throws Exception {
+        ChannelCache cache = new ChannelCache(1);
+        ChannelCache.Handle a = cache.open(tempFile());
+        ChannelCache.Handle b = cache.open(tempFile());
+        FileChannel fa = a.acquire();
+        FileChannel fb = b.acquire();
+        assertEquals(2, cache.getNumOpen());
+        assertTrue(fa.isOpen());
+        a.release();
+        assertEquals(1, cache.getNumOpen());
+        assertFalse(fa.isOpen());
+        assertTrue(fb.isOpen());
+        b.release();
+    }
+
+    /**
+     * HeapFiles open their file on first use, not when they are created
+     */
+    @Test public void heapFileOpensLazily() throws Exception {
+        File f = new File(tempFile().getPath() + ".table");
+        f.deleteOnExit();
+        new File(f.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(f.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+        ChannelCache cache = Database.getChannelCache();
+        int open = cache.getNumOpen();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertFalse(f.exists());
+        assertEquals(open, cache.getNumOpen());
+
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(f.exists());
+        assertEquals(1, hf.numPages());
+        assertTrue(cache.getNumOpen() <= cache.getMaxOpen());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ChannelCacheTest.class);
+    }
+}
@@ -0,0 +1,191 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private File file;
+    private ColumnFile cf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE },
+                new String[] { "id", "name", "flag" });
+        file = File.createTempFile("columnar", ".dat");
+        file.deleteOnExit();
+        for (int i = 0; i <= td.numFields(); i++)
+            ColumnFile.segmentFile(file, i).deleteOnExit();
+        cf = open();
+    }
+
+    private ColumnFile open() {
+        ColumnFile f = new ColumnFile(file, td);
+        Database.getCatalog().addTable(f, "columnar");
+        return f;
+    }
+
+    private Tuple tuple(int id) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField("name" + (id % 10), Type.STRING_LEN));
+        t.setField(2, new IntField(id % 2));
+        return t;
+    }
+
+    private void insert(TransactionId tid, int from, int to) throws Exception {
+        for (int i = from; i < to; i++)
+            Database.getBufferPool().insertTuple(tid, cf.getId(), tuple(i));
+    }
+
+    /** @return the sum of the ids of the table, checking every row against its id */
+    private int scan(ColumnFile f, int expectedRows) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        int rows = 0, sum = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertEquals(tuple(id).getField(1), t.getField(1));
+            assertEquals(tuple(id).getField(2), t.getField(2));
+            sum += id;
+            rows++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(expectedRows, rows);
+        return sum;
+    }
+
+    /**
+     * Unit test for ColumnPage.getPageData(), which picks the smallest
+     * encoding
+     */
+    @Test public void encodings() throws Exception {
+        ColumnPage ints = new ColumnPage(new ColumnPageId(cf.getId(), 0, 0), new byte[BufferPool.getPageSize()]);
+        ColumnPage names = new ColumnPage(new ColumnPageId(cf.getId(), 1, 0), new byte[BufferPool.getPageSize()]);
+        ColumnPage flags = new ColumnPage(new ColumnPageId(cf.getId(), 2, 0), new byte[BufferPool.getPageSize()]);
+        ColumnPage runs = new ColumnPage(new ColumnPageId(cf.getId(), 3, 0), new byte[BufferPool.getPageSize()]);
+        int n = 0;
+        while (ints.append(n, new IntField(n * 7))) {
+            assertTrue(names.append(n, tuple(n).getField(1)));
+            assertTrue(flags.append(n, tuple(n).getField(2)));
+            assertTrue(runs.append(n, new IntField(n / 100)));
+            n++;
+        }
+        assertEquals((BufferPool.getPageSize() - ColumnPage.HEADER_SIZE) / 4, n);
+        assertEquals(ColumnPage.PLAIN, ints.getEncoding());
+        assertEquals(ColumnPage.DICT, names.getEncoding());
+        assertEquals(ColumnPage.BITS, flags.getEncoding());
+        assertEquals(ColumnPage.RLE, runs.getEncoding());
+
+        ColumnPage[] pages = { ints, names, flags, runs };
+        for (ColumnPage p : pages) {
+            ColumnPage copy = new ColumnPage(p.getId(), p.getPageData());
+            assertEquals(n, copy.getNumRows());
+            for (int i = 0; i < n; i++)
+                assertEquals(p.getField(i), copy.getField(i));
+        }
+    }
+
+    /**
+     * Unit test for ColumnFile.insertTuple() and iterator(), reading the
+     * table back after reopening it
+     */
+    @Test public void insertTuple() throws Exception {
+        TransactionId tid = new TransactionId();
+        insert(tid, 0, 10000);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(10000 * 9999 / 2, scan(cf, 10000));
+        // the repeating names take a byte a row, the flags a bit
+        assertTrue(cf.numPages(0) >= 10);
+        assertTrue(cf.numPages(1) <= 3);
+        assertEquals(1, cf.numPages(2));
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(10000 * 9999 / 2, scan(open(), 10000));
+    }
+
+    /**
+     * Unit test for ColumnFile.deleteTuple(), and for appends rolled back by
+     * an abort
+     */
+    @Test public void deleteTuple() throws Exception {
+        TransactionId tid = new TransactionId();
+        insert(tid, 0, 3000);
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        int expected = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            if (id % 3 == 0)
+                Database.getBufferPool().deleteTuple(tid, t);
+            else
+                expected += id;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(expected, scan(cf, 2000));
+
+        tid = new TransactionId();
+        insert(tid, 5000, 8000);
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(expected, scan(cf, 2000));
+
+        // the rows of the aborted appends are taken again
+        tid = new TransactionId();
+        insert(tid, 3000, 3010);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(expected + 30045, scan(cf, 2010));
+    }
+
+    /**
+     * A ColumnScan reads only the columns it returns
+     */
+    @Test public void columnScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        insert(tid, 0, 100);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        tid = new TransactionId();
+        ColumnScan scan = new ColumnScan(tid, cf.getId(), "c", new String[] { "flag", "id" });
+        assertEquals("c.flag", scan.getTupleDesc().getFieldName(0));
+        assertEquals(2, scan.getTupleDesc().numFields());
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(((IntField) t.getField(1)).getValue() % 2, ((IntField) t.getField(0)).getValue());
+            count++;
+        }
+        scan.close();
+        assertEquals(100, count);
+        BufferPool bp = Database.getBufferPool();
+        assertTrue(bp.isCachedOrLoading(new ColumnPageId(cf.getId(), 0, 0)));
+        assertFalse(bp.isCachedOrLoading(new ColumnPageId(cf.getId(), 1, 0)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnFileTest.class);
+    }
+}
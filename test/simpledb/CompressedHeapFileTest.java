@@ -0,0 +1,135 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private File file;
+    private CompressedHeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 5, 64, null, tuples);
+        CompressedHeapFile.indexFile(file).deleteOnExit();
+        new File(file.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        assertTrue(CompressedHeapFile.isRaw(file));
+        CompressedHeapFile.compress(file, BufferPool.getPageSize());
+        hf = new CompressedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for CompressedHeapFile.compress()
+     */
+    @Test public void compress() throws Exception {
+        assertFalse(CompressedHeapFile.isRaw(file));
+        assertEquals(5, hf.numPages());
+        // small ints deflate well
+        assertTrue(hf.getStoredBytes() < 5 * BufferPool.getPageSize() / 2);
+        assertEquals(hf.getStoredBytes(), file.length());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * A table of raw pages is not converted behind the caller's back
+     */
+    @Test(expected = IllegalArgumentException.class) public void openRaw() throws Exception {
+        File raw = SystemTestUtil.createRandomHeapFileUnopened(2, 10, 64, null, null);
+        CompressedHeapFile.indexFile(raw).deleteOnExit();
+        new CompressedHeapFile(raw, Utility.getTupleDesc(2));
+    }
+
+    /**
+     * Extents left by pages that outgrew them are reused, also after the
+     * file is reopened
+     */
+    @Test public void reuseExtents() throws Exception {
+        int pageSize = BufferPool.getPageSize();
+        byte[] noise = new byte[pageSize];
+        new Random(1).nextBytes(noise);
+        byte[] empty = new byte[pageSize];
+
+        hf.writeImage(0, ByteBuffer.wrap(noise)); // outgrows its extent
+        hf.writeImage(1, ByteBuffer.wrap(noise));
+        long end = hf.getStoredBytes();
+        hf.writeImage(5, ByteBuffer.wrap(empty)); // fits where page 0 was
+        assertEquals(end, hf.getStoredBytes());
+        assertEquals(6, hf.numPages());
+
+        CompressedHeapFile reopened = new CompressedHeapFile(file, Utility.getTupleDesc(2));
+        reopened.writeImage(6, ByteBuffer.wrap(empty)); // fits where page 1 was
+        assertEquals(end, reopened.getStoredBytes());
+        for (int pg = 0; pg < 7; pg++) {
+            ByteBuffer image = ByteBuffer.allocate(pageSize);
+            reopened.readImage(pg, image);
+            if (pg < 2)
+                assertArrayEquals(noise, image.array());
+            else if (pg >= 5)
+                assertArrayEquals(empty, image.array());
+        }
+    }
+
+    /**
+     * Unit test for CompressedHeapFile.writePage() through inserts and
+     * deletes, reading the file back after reopening it
+     */
+    @Test public void writePage() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        HeapPage p = (HeapPage) bp.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_WRITE);
+        bp.deleteTuple(tid, p.iterator().next());
+        tuples.remove(0);
+        for (int i = 0; i < 504 + 1; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(i);
+            tuples.add(row);
+        }
+        bp.transactionComplete(tid);
+        assertEquals(6, hf.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        CompressedHeapFile reopened = new CompressedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertEquals(6, reopened.numPages());
+        SystemTestUtil.matchTuples(reopened, tuples);
+    }
+
+    /**
+     * Aborted changes are undone through the compressed pages
+     */
+    @Test public void abort() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        for (int i = 0; i < 10; i++)
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(-1, 2));
+        bp.flushAllPages();
+        bp.transactionComplete(tid, false);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
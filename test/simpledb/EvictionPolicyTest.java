@@ -0,0 +1,183 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final EvictionPolicy.VictimFilter ANY = new EvictionPolicy.VictimFilter() {
+        public boolean accept(PageId pid) {
+            return true;
+        }
+    };
+
+    private static PageId pid(int n) {
+        return new HeapPageId(0, n);
+    }
+
+    private static void addAll(EvictionPolicy p, int n) {
+        for (int i = 0; i < n; i++)
+            p.pageAdded(pid(i));
+    }
+
+    /**
+     * Unit test for LruEvictionPolicy: the least recently used page goes first
+     */
+    @Test public void lru() {
+        EvictionPolicy p = EvictionPolicy.Kind.LRU.create(4);
+        addAll(p, 4);
+        p.pageAccessed(pid(0));
+        assertEquals(pid(1), p.chooseVictim(ANY));
+        p.pageRemoved(pid(1));
+        assertEquals(pid(2), p.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for ClockEvictionPolicy: referenced pages get a second chance
+     */
+    @Test public void clock() {
+        EvictionPolicy p = EvictionPolicy.Kind.CLOCK.create(3);
+        addAll(p, 3);
+        // every bit is set, so the first sweep clears them and the hand wraps
+        assertEquals(pid(0), p.chooseVictim(ANY));
+        p.pageRemoved(pid(0));
+        p.pageAdded(pid(3));
+        p.pageAccessed(pid(1));
+        assertEquals(pid(2), p.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for LruKEvictionPolicy: pages seen once are evicted before
+     * pages with K references, however recent
+     */
+    @Test public void lruK() {
+        EvictionPolicy p = EvictionPolicy.Kind.LRU_K.create(4);
+        addAll(p, 3);
+        p.pageAccessed(pid(0));
+        p.pageAccessed(pid(1));
+        assertEquals(pid(2), p.chooseVictim(ANY));
+        p.pageRemoved(pid(2));
+        assertEquals(pid(0), p.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for TwoQueueEvictionPolicy: a page evicted from A1in and
+     * requested again is promoted to Am, which survives a one-off scan
+     */
+    @Test public void twoQueue() {
+        EvictionPolicy p = EvictionPolicy.Kind.TWO_Q.create(8);
+        p.pageAdded(pid(0));
+        p.pageRemoved(pid(0));
+        p.pageAdded(pid(0)); // back from A1out: lands in Am
+        for (int i = 1; i < 8; i++)
+            p.pageAdded(pid(i));
+        // a long scan keeps cycling through A1in
+        for (int i = 8; i < 40; i++) {
+            PageId victim = p.chooseVictim(ANY);
+            assertEquals(pid(i - 7), victim);
+            p.pageRemoved(victim);
+            p.pageAdded(pid(i));
+        }
+    }
+
+    /**
+     * Victims rejected by the filter are skipped, and a search that finds
+     * none leaves the policy as it was
+     */
+    @Test public void filter() {
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            EvictionPolicy p = kind.create(4);
+            addAll(p, 4);
+            EvictionPolicy.VictimFilter onlyThree = new EvictionPolicy.VictimFilter() {
+                public boolean accept(PageId pid) {
+                    return pid.pageNumber() == 3;
+                }
+            };
+            assertEquals(kind.toString(), pid(3), p.chooseVictim(onlyThree));
+            EvictionPolicy.VictimFilter none = new EvictionPolicy.VictimFilter() {
+                public boolean accept(PageId pid) {
+                    return false;
+                }
+            };
+            p.pageAccessed(pid(1));
+            List<PageId> order = p.victimOrder();
+            assertNull(kind.toString(), p.chooseVictim(none));
+            assertEquals(kind.toString(), order, p.victimOrder());
+        }
+    }
+
+    /**
+     * Unit test for EvictionPolicy.victimOrder(): it lists every page, best
+     * victim first, and leaves the policy as it was
+     */
+    @Test public void victimOrder() {
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            EvictionPolicy p = kind.create(4);
+            addAll(p, 4);
+            p.pageAccessed(pid(2));
+            List<PageId> order = p.victimOrder();
+            assertEquals(kind.toString(), 4, new HashSet<PageId>(order).size());
+            assertEquals(kind.toString(), order, p.victimOrder());
+            assertEquals(kind.toString(), order.get(0), p.chooseVictim(ANY));
+        }
+
+        // CLOCK keeps its reference bits: page 1 still gets its second chance
+        EvictionPolicy p = EvictionPolicy.Kind.CLOCK.create(3);
+        addAll(p, 3);
+        p.pageRemoved(p.chooseVictim(ANY));
+        p.pageAdded(pid(3));
+        p.pageAccessed(pid(1));
+        assertEquals(Arrays.asList(pid(2), pid(1), pid(3)), p.victimOrder());
+        p.victimOrder();
+        assertEquals(pid(2), p.chooseVictim(ANY));
+    }
+
+    /**
+     * A pool of dirty pages under CLOCK evicts in CLOCK order: looking for a
+     * clean page first must not clear the reference bits
+     */
+    @Test public void clockWithDirtyPages() throws Exception {
+        if (Database.getBackgroundWriter() != null)
+            Database.getBackgroundWriter().shutdown(); // would clean the pages behind our back
+        File f = File.createTempFile("clock", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        for (int i = 0; i < 6; i++)
+            hf.allocateNewPage();
+        BufferPool bp = Database.resetBufferPool(4, EvictionPolicy.Kind.CLOCK);
+        if (Database.getBackgroundWriter() != null)
+            Database.getBackgroundWriter().shutdown();
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5; i++) // page 4 evicts page 0, the first the hand reaches
+            bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_WRITE).markDirty(true, tid);
+        bp.getPage(tid, new HeapPageId(hf.getId(), 1), Permissions.READ_WRITE); // second chance for 1
+        bp.getPage(tid, new HeapPageId(hf.getId(), 5), Permissions.READ_WRITE);
+        assertTrue(bp.isCachedOrLoading(new HeapPageId(hf.getId(), 1)));
+        assertFalse(bp.isCachedOrLoading(new HeapPageId(hf.getId(), 2)));
+        bp.transactionComplete(tid, false);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,59 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class FieldTest extends SimpleDbTestBase {
+
+    private static void checkCodec(Field f) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        f.serialize(dos);
+        dos.flush();
+        byte[] expected = baos.toByteArray();
+
+        ByteBuffer buf = ByteBuffer.allocate(expected.length + 3);
+        buf.position(3);
+        f.serialize(buf);
+        assertEquals(expected.length + 3, buf.position());
+        byte[] actual = new byte[expected.length];
+        buf.position(3);
+        buf.get(actual);
+        assertArrayEquals(expected, actual);
+
+        buf.position(3);
+        assertEquals(f, f.getType().parse(buf));
+        assertEquals(expected.length + 3, buf.position());
+    }
+
+    /**
+     * Unit test for Field.serialize(ByteBuffer) and Type.parse(ByteBuffer)
+     */
+    @Test public void byteBufferCodec() throws Exception {
+        checkCodec(new IntField(-42));
+        checkCodec(new IntField(Integer.MAX_VALUE));
+        checkCodec(new StringField("", Type.STRING_LEN));
+        checkCodec(new StringField("hello", Type.STRING_LEN));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Type.STRING_LEN + 10; i++)
+            sb.append((char) ('a' + i % 26));
+        checkCodec(new StringField(sb.toString(), Type.STRING_LEN));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FieldTest.class);
+    }
+}
@@ -1,14 +1,19 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
 
 public class FilterTest extends SimpleDbTestBase {
 
@@ -120,6 +125,37 @@ public class FilterTest extends SimpleDbTestBase {
     op.close();
   }
 
+  /**
+   * Unit test for Filter over a SeqScan of a heap file, which hands its
+   * predicate to the scan
+   */
+  @Test public void filterPushedDown() throws Exception {
+    ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+    HeapFile f = SystemTestUtil.createRandomHeapFile(testWidth, 3000, null, tuples);
+    int expected = 0;
+    for (ArrayList<Integer> t : tuples) {
+      if (t.get(1) < 1000)
+        expected++;
+    }
+
+    TransactionId tid = new TransactionId();
+    SeqScan ss = new SeqScan(tid, f.getId(), "");
+    Predicate pred = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(1000));
+    Filter op = new Filter(pred, ss);
+    op.open();
+    int count = 0;
+    while (op.hasNext()) {
+      assertTrue(pred.filter(op.next()));
+      count++;
+    }
+    op.close();
+    assertEquals(expected, count);
+    // the scan now checks the predicate itself, and takes no other
+    assertTrue(ss.pushDown(pred));
+    assertFalse(ss.pushDown(new Predicate(1, Predicate.Op.EQUALS, new IntField(0))));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,100 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private File table;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        table = File.createTempFile("fsm", ".dat");
+        table.deleteOnExit();
+        new File(table.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(table.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.bucket()
+     */
+    @Test public void bucket() {
+        assertEquals(0, FreeSpaceMap.bucket(0, 504));
+        assertEquals(1, FreeSpaceMap.bucket(1, 504));
+        assertEquals(FreeSpaceMap.BUCKETS - 1, FreeSpaceMap.bucket(504, 504));
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.update() and findPageWithRoom()
+     */
+    @Test public void findPageWithRoom() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(table, 3);
+        // pages without a recorded bucket are assumed to have room
+        assertEquals(0, fsm.findPageWithRoom());
+        fsm.update(0, 0, 10);
+        fsm.update(1, 0, 10);
+        assertEquals(2, fsm.findPageWithRoom());
+        fsm.update(2, 0, 10);
+        assertEquals(-1, fsm.findPageWithRoom());
+        fsm.update(0, 3, 10);
+        assertEquals(0, fsm.findPageWithRoom());
+        fsm.update(4, 10, 10);
+        assertEquals(3, fsm.findPageWithRoom(1));
+        fsm.close();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.findPageWithBucket()
+     */
+    @Test public void findPageWithBucket() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(table, 0);
+        fsm.update(0, 2, 10);
+        fsm.update(1, 8, 10);
+        fsm.update(2, 0, 10);
+        fsm.update(3, 5, 10);
+        int half = FreeSpaceMap.bucketWithRoom(4, 10);
+        assertEquals(1, fsm.findPageWithBucket(0, half));
+        assertEquals(3, fsm.findPageWithBucket(2, half));
+        assertEquals(1, fsm.findPageWithBucket(4, half)); // wraps round
+        fsm.update(1, 1, 10); // moves down a bucket
+        assertEquals(3, fsm.findPageWithBucket(0, half));
+        assertEquals(-1, fsm.findPageWithBucket(0, FreeSpaceMap.bucketWithRoom(9, 10)));
+        assertEquals(0, fsm.findPageWithBucket(0, 1));
+        fsm.close();
+    }
+
+    /**
+     * The map survives being reloaded from its side file
+     */
+    @Test public void persistent() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(table, 0);
+        for (int pg = 0; pg < 5; pg++)
+            fsm.update(pg, 0, 10);
+        fsm.update(7, 5, 10); // pages 5 and 6 are unknown
+        fsm.update(3, 10, 10);
+        fsm.close();
+
+        fsm = new FreeSpaceMap(table, 9);
+        assertEquals(0, fsm.getBucket(0));
+        assertEquals(FreeSpaceMap.BUCKETS - 1, fsm.getBucket(3));
+        assertEquals(FreeSpaceMap.BUCKETS - 1, fsm.getBucket(5));
+        assertEquals(FreeSpaceMap.bucket(5, 10), fsm.getBucket(7));
+        assertEquals(FreeSpaceMap.BUCKETS - 1, fsm.getBucket(8));
+        assertEquals(3, fsm.findPageWithRoom());
+        fsm.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,134 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HeapFileEncoderTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private File text;
+
+    private static File tempFile(String suffix) throws IOException {
+        File f = File.createTempFile("encoder", suffix);
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static byte[] contents(File f) throws IOException {
+        byte[] b = new byte[(int)f.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        in.readFully(b);
+        in.close();
+        return b;
+    }
+
+    private static void write(File f, String s) throws IOException {
+        FileWriter w = new FileWriter(f);
+        w.write(s);
+        w.close();
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Random r = new Random(42);
+        tuples = new ArrayList<ArrayList<Integer>>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            for (int j = 0; j < 3; j++)
+                tuple.add(j == 0 ? i : r.nextInt() >> r.nextInt(32));
+            tuples.add(tuple);
+            sb.append(tuple.get(0)).append(',').append(tuple.get(1)).append(", ").append(tuple.get(2));
+            // mix in the line endings and blank lines the parser has to skip
+            if (i % 7 == 0)
+                sb.append('\r');
+            if (i % 11 == 0)
+                sb.append("\n\n");
+            if (i < 4999)
+                sb.append('\n');
+        }
+        text = tempFile(".txt");
+        write(text, sb.toString());
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert() on text input split across
+     * many ranges and threads
+     */
+    @Test public void parallelMatchesDirect() throws Exception {
+        File direct = tempFile(".dat");
+        HeapFileEncoder.convert(tuples, direct, BufferPool.getPageSize(), 3);
+        assertEquals(0, direct.length() % BufferPool.getPageSize());
+
+        Type[] types = Utility.getTypes(3);
+        for (int chunk : new int[] { 1, 97, 1000, HeapFileEncoder.CHUNK_BYTES }) {
+            File parsed = tempFile(".dat");
+            HeapFileEncoder.convert(text, parsed, BufferPool.getPageSize(), types, ',', 4, chunk);
+            assertArrayEquals("chunk " + chunk, contents(direct), contents(parsed));
+        }
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert() with string fields
+     */
+    @Test public void strings() throws Exception {
+        File in = tempFile(".txt");
+        write(in, "1| hello \n2|" + "abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz0123456789\n");
+        File out = tempFile(".dat");
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), 2, types, '|', 2);
+
+        HeapFile hf = new HeapFile(out, new TupleDesc(types));
+        Database.getCatalog().addTable(hf, "strings");
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        assertEquals("hello", ((StringField)it.next().getField(1)).getValue());
+        assertEquals(Type.STRING_LEN, ((StringField)it.next().getField(1)).getValue().length());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An empty input still produces one empty page
+     */
+    @Test public void empty() throws Exception {
+        File in = tempFile(".txt");
+        write(in, "\n\n");
+        File out = tempFile(".dat");
+        HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), 2);
+        assertArrayEquals(new byte[BufferPool.getPageSize()], contents(out));
+    }
+
+    /**
+     * Lines with the wrong number of fields are rejected
+     */
+    @Test public void malformedLine() throws Exception {
+        File in = tempFile(".txt");
+        write(in, "1,2\n3\n");
+        try {
+            HeapFileEncoder.convert(in, tempFile(".dat"), BufferPool.getPageSize(), 2);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+    }
+}
@@ -1,11 +1,15 @@
 package simpledb;
 
+import java.io.File;
+import java.util.Iterator;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SystemTestUtil;
 
 public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
     private TransactionId tid;
@@ -44,6 +48,164 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.bulkInsert()
+     */
+    @Test public void bulkInsert() throws Exception {
+        java.util.ArrayList<Tuple> tuples = new java.util.ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 70 + 3; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+        // the file starts out with one empty page, which bulk loads leave alone
+        assertEquals(1, empty.numPages());
+        assertEquals(tuples.size(), empty.bulkInsert(tid, tuples.iterator()));
+        assertEquals(72, empty.numPages());
+        assertEquals(new HeapPageId(empty.getId(), 71), tuples.get(tuples.size() - 1).getRecordId().getPageId());
+        assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(empty.getId(), 71)));
+
+        // ordinary inserts still find the free space
+        for (int i = 0; i < 504 + 501; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(-1, 2));
+        assertEquals(72, empty.numPages());
+
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(tuples.size() + 504 + 501, count);
+    }
+
+    /**
+     * An aborted bulk insert leaves no tuples behind
+     */
+    @Test public void bulkInsertAbort() throws Exception {
+        empty.insertTuple(tid, Utility.getHeapTuple(-1, 2));
+        Database.getBufferPool().transactionComplete(tid);
+
+        TransactionId loader = new TransactionId();
+        java.util.ArrayList<Tuple> tuples = new java.util.ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 3; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+        empty.bulkInsert(loader, tuples.iterator());
+        assertEquals(4, empty.numPages());
+        Database.getBufferPool().transactionComplete(loader, false);
+
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(1, count);
+    }
+
+    private static HeapFile newTable() throws Exception {
+        File f = File.createTempFile("bulk", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(f.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static Iterator<Tuple> tuples(int n) {
+        java.util.ArrayList<Tuple> tuples = new java.util.ArrayList<Tuple>();
+        for (int i = 0; i < n; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+        return tuples.iterator();
+    }
+
+    /**
+     * A bulk load into an empty table logs one EXTEND record per batch
+     * instead of its pages, and recovery empties the pages again if the
+     * load never committed
+     */
+    @Test public void bulkInsertRecovery() throws Exception {
+        HeapFile kept = newTable();
+        Transaction committed = new Transaction();
+        committed.start();
+        kept.bulkInsert(committed.getId(), tuples(504 * 2));
+        committed.commit();
+
+        HeapFile lost = newTable();
+        int records = Database.getLogFile().getTotalRecords();
+        assertEquals(504 * 3, lost.bulkInsert(tid, tuples(504 * 3)));
+        assertEquals(3, lost.numPages());
+        assertEquals(records + 1, Database.getLogFile().getTotalRecords());
+
+        // crash before tid commits
+        Database.getLogFile().recover();
+        for (int i = 0; i < 3; i++) {
+            HeapPage p = (HeapPage) lost.readPage(new HeapPageId(lost.getId(), i));
+            assertEquals(504, p.getNumEmptySlots());
+        }
+        for (int i = 0; i < 2; i++) {
+            HeapPage p = (HeapPage) kept.readPage(new HeapPageId(kept.getId(), i));
+            assertEquals(0, p.getNumEmptySlots());
+        }
+    }
+
+    /**
+     * Unit test for HeapFile.numPages() on a file grown by extents, which
+     * counts only the pages in use, also once the file is opened again
+     */
+    @Test public void extents() throws Exception {
+        for (int i = 0; i < 504 * 3; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        assertEquals(3, empty.numPages());
+        long length = empty.getFile().length();
+        assertTrue(length >= empty.getMinExtentBytes());
+
+        // new pages go into the extent without growing the file
+        empty.allocateNewPage();
+        assertEquals(4, empty.numPages());
+        assertEquals(length, empty.getFile().length());
+
+        HeapFile reopened = new HeapFile(empty.getFile(), empty.getTupleDesc());
+        assertEquals(4, reopened.numPages());
+        try {
+            reopened.readPage(new HeapPageId(reopened.getId(), 4));
+            fail("read a preallocated page");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Extents start at the configured number of bytes and grow with the
+     * file up to the configured maximum
+     */
+    @Test public void extentSizes() throws Exception {
+        int pageSize = BufferPool.getPageSize();
+        assertEquals(HeapFile.DEFAULT_MIN_EXTENT_PAGES * pageSize, empty.getMinExtentBytes());
+
+        System.setProperty(HeapFile.MIN_EXTENT_PROPERTY, Integer.toString(4 * pageSize));
+        System.setProperty(HeapFile.MAX_EXTENT_PROPERTY, Integer.toString(8 * pageSize));
+        HeapFile hf;
+        try {
+            hf = newTable();
+        } finally {
+            System.clearProperty(HeapFile.MIN_EXTENT_PROPERTY);
+            System.clearProperty(HeapFile.MAX_EXTENT_PROPERTY);
+        }
+        assertEquals(4 * pageSize, hf.getMinExtentBytes());
+        assertEquals(8 * pageSize, hf.getMaxExtentBytes());
+
+        // 1 page and an extent of 4, then of 5, then capped at 8
+        int[] lengths = { 5, 5, 5, 5, 5, 11, 11, 11, 11, 11, 11, 20 };
+        for (int i = 0; i < lengths.length; i++) {
+            hf.allocateNewPage();
+            assertEquals(i + 1, hf.numPages());
+            assertEquals((long) lengths[i] * pageSize, hf.getFile().length());
+        }
+    }
+
     /**
      * JUnit suite target
      */
@@ -49,6 +49,9 @@ public class HeapPageIdTest extends SimpleDbTestBase {
         code2 = pid.hashCode();
         assertEquals(code2, pid.hashCode());
         assertEquals(code2, pid.hashCode());
+
+        // ids whose decimal concatenations coincide must still hash apart
+        assertFalse(new HeapPageId(1, 12).hashCode() == new HeapPageId(11, 2).hashCode());
     }
 
     /**
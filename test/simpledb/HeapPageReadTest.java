@@ -99,6 +99,46 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getField() and getTuple()
+     */
+    @Test public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        // a single field is decoded without the tuple
+        assertEquals(EXAMPLE_VALUES[3][1], ((IntField) page.getField(3, 1)).getValue());
+        assertEquals(null, page.getField(20, 0));
+
+        Tuple t = page.getTuple(5);
+        assertEquals(EXAMPLE_VALUES[5][0], ((IntField) t.getField(0)).getValue());
+        assertEquals(new RecordId(pid, 5), t.getRecordId());
+        assertTrue(t == page.getTuple(5));
+        assertEquals(null, page.getTuple(20));
+    }
+
+    /**
+     * Unit test for HeapPageIterator with a predicate, which is checked on
+     * the page before the tuples are built
+     */
+    @Test public void iteratorWithPredicate() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Predicate pred = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(40000));
+        assertTrue(pred.filter(page, 1));
+        assertFalse(pred.filter(page, 0));
+        assertFalse(pred.filter(page, 20)); // empty slot
+
+        Iterator<Tuple> it = new HeapPageIterator(page, pred);
+        for (int row = 0; row < EXAMPLE_VALUES.length; row++) {
+            if (EXAMPLE_VALUES[row][1] <= 40000)
+                continue;
+            assertTrue(it.hasNext());
+            Tuple tup = it.next();
+            assertEquals(new RecordId(pid, row), tup.getRecordId());
+            assertEquals(EXAMPLE_VALUES[row][1], ((IntField) tup.getField(1)).getValue());
+        }
+        assertFalse(it.hasNext());
+        assertEquals(null, it.next());
+    }
+
     /**
      * Unit test for HeapPage.getNumEmptySlots()
      */
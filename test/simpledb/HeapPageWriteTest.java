@@ -88,6 +88,26 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
     /**
      * Unit test for HeapPage.deleteTuple() with false tuples
      */
+    /**
+     * Unit test for HeapPage.getBeforeImage() and setBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        // an unchanged page is its own before image
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData()));
+
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        assertEquals(free, page.getBeforeImage().getNumEmptySlots());
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData()));
+
+        page.setBeforeImage();
+        assertEquals(free - 1, page.getBeforeImage().getNumEmptySlots());
+        page.insertTuple(Utility.getHeapTuple(8, 2));
+        assertEquals(free - 1, page.getBeforeImage().getNumEmptySlots());
+        assertEquals(free - 2, page.getNumEmptySlots());
+    }
+
     @Test(expected=DbException.class)
         public void deleteNonexistentTuple() throws Exception {
         HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
@@ -0,0 +1,116 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LockingTest extends SimpleDbTestBase {
+    private static final int WAIT = 100;
+
+    private PageId p0, p1;
+    private TransactionId tid1, tid2;
+    private BufferPool bp;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 1100, null, null);
+        p0 = new HeapPageId(f.getId(), 0);
+        p1 = new HeapPageId(f.getId(), 1);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * Start a LockGrabber for tid/pid/perm and report whether it got the lock
+     * within WAIT ms.
+     */
+    private TestUtil.LockGrabber grab(TransactionId tid, PageId pid, Permissions perm)
+        throws InterruptedException {
+        TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid, pid, perm);
+        t.start();
+        Thread.sleep(WAIT);
+        return t;
+    }
+
+    /**
+     * Unit test for BufferPool.getPage() with shared locks
+     */
+    @Test public void acquireReadLocksOnSamePage() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        assertTrue(grab(tid2, p0, Permissions.READ_ONLY).acquired());
+        assertTrue(bp.holdsLock(tid1, p0));
+        assertTrue(bp.holdsLock(tid2, p0));
+    }
+
+    /**
+     * Unit test for BufferPool.getPage(): a writer waits for a reader
+     */
+    @Test public void acquireReadWriteLocksOnSamePage() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        TestUtil.LockGrabber t = grab(tid2, p0, Permissions.READ_WRITE);
+        assertFalse(t.acquired());
+
+        bp.transactionComplete(tid1);
+        t.join();
+        assertTrue(t.acquired());
+        assertFalse(bp.holdsLock(tid1, p0));
+    }
+
+    /**
+     * Unit test for BufferPool.getPage(): locks on different pages don't conflict
+     */
+    @Test public void acquireWriteLocksOnTwoPages() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        assertTrue(grab(tid2, p1, Permissions.READ_WRITE).acquired());
+    }
+
+    /**
+     * Unit test for BufferPool.getPage(): a sole reader upgrades its lock
+     */
+    @Test public void lockUpgrade() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        TestUtil.LockGrabber t = grab(tid2, p0, Permissions.READ_ONLY);
+        assertFalse(t.acquired());
+
+        bp.releasePage(tid1, p0);
+        t.join();
+        assertTrue(t.acquired());
+    }
+
+    /**
+     * Two transactions waiting for each other form a deadlock; the younger
+     * one is aborted and the older one gets its lock
+     */
+    @Test public void deadlockAbortsYoungest() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        bp.getPage(tid2, p1, Permissions.READ_WRITE);
+
+        TestUtil.LockGrabber t1 = grab(tid1, p1, Permissions.READ_WRITE);
+        assertFalse(t1.acquired());
+        TestUtil.LockGrabber t2 = grab(tid2, p0, Permissions.READ_WRITE);
+        t2.join();
+        assertFalse(t2.acquired());
+        assertEquals(TransactionAbortedException.class, t2.getError().getClass());
+
+        t1.join();
+        assertTrue(t1.acquired());
+        assertEquals(1, bp.getLockManager().getDeadlockCount());
+        assertTrue(bp.getLockManager().getWaitCount() >= 2);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockingTest.class);
+    }
+}
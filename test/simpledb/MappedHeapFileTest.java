@@ -0,0 +1,69 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HeapFile mapped;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 3, 1000, null, tuples);
+        mapped = new HeapFile(f, Utility.getTupleDesc(2), true);
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for HeapFile.readPage() in memory-mapped mode
+     */
+    @Test public void readPage() throws Exception {
+        assertTrue(mapped.isMapped());
+        SystemTestUtil.matchTuples(mapped, tuples);
+    }
+
+    /**
+     * Pages read through a mapping can be modified and written back
+     */
+    @Test public void modifyAndGrow() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        // delete from a mapped page
+        HeapPage p = (HeapPage) bp.getPage(tid, new HeapPageId(mapped.getId(), 0), Permissions.READ_WRITE);
+        Tuple victim = p.iterator().next();
+        bp.deleteTuple(tid, victim);
+        tuples.remove(0);
+        // and grow the file past the mapped region
+        for (int i = 0; i < 504 + 1; i++) {
+            bp.insertTuple(tid, mapped.getId(), Utility.getHeapTuple(i, 2));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(i);
+            tuples.add(row);
+        }
+        bp.transactionComplete(tid);
+        assertEquals(4, mapped.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(mapped, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,68 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageArenaTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for PageArena.allocate() and release()
+     */
+    @Test public void allocateRelease() {
+        PageArena arena = new PageArena(3, 16);
+        int a = arena.allocate(), b = arena.allocate(), c = arena.allocate();
+        assertEquals(-1, arena.allocate());
+        assertEquals(0, arena.getNumFree());
+
+        // frames don't overlap
+        arena.frame(a).put(0, (byte) 1);
+        arena.frame(b).put(0, (byte) 2);
+        arena.frame(c).put(15, (byte) 3);
+        assertEquals(1, arena.frame(a).get(0));
+        assertEquals(2, arena.frame(b).get(0));
+        assertEquals(0, arena.frame(b).get(15));
+        assertEquals(16, arena.frame(c).remaining());
+
+        arena.release(b);
+        assertEquals(b, arena.allocate());
+    }
+
+    /**
+     * Pages read off-heap keep their contents after their frames are reused
+     */
+    @Test public void evictedPagesAreDetached() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * 6, null, tuples);
+        BufferPool bp = new BufferPool(2, EvictionPolicy.Kind.LRU, true);
+        TransactionId tid = new TransactionId();
+
+        HeapPage first = (HeapPage) bp.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        for (int i = 1; i < 6; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertTrue(bp.getArena().getNumFree() >= ReadAhead.THREADS);
+
+        Iterator<Tuple> it = first.iterator();
+        for (int i = 0; i < 504; i++) {
+            Tuple t = it.next();
+            assertEquals(tuples.get(i).get(0).intValue(), ((IntField) t.getField(0)).getValue());
+            assertEquals(tuples.get(i).get(1).intValue(), ((IntField) t.getField(1)).getValue());
+        }
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageArenaTest.class);
+    }
+}
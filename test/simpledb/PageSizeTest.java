@@ -0,0 +1,154 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageSizeTest extends SimpleDbTestBase {
+    private HeapFile large;
+    private HeapFile small;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        large = create(16384);
+        small = create(1024);
+    }
+
+    private HeapFile create(int pageSize) throws Exception {
+        File f = File.createTempFile("pagesize", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(f.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), false, PageFormat.FIXED, pageSize);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /** @return the rows inserted, as SystemTestUtil.matchTuples expects them */
+    private ArrayList<ArrayList<Integer>> insert(HeapFile hf, int n) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < n; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(i);
+            tuples.add(row);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    /**
+     * Tables with different page sizes live side by side, each file laid
+     * out in its own page size
+     */
+    @Test public void mixedSizes() throws Exception {
+        ArrayList<ArrayList<Integer>> largeTuples = insert(large, 5000);
+        ArrayList<ArrayList<Integer>> smallTuples = insert(small, 5000);
+        int perLarge = PageFormat.FIXED.capacity(large.getTupleDesc(), 16384);
+        int perSmall = PageFormat.FIXED.capacity(small.getTupleDesc(), 1024);
+        assertEquals((5000 + perLarge - 1) / perLarge, large.numPages());
+        assertEquals((5000 + perSmall - 1) / perSmall, small.numPages());
+        // the files grow by extents of whole pages
+        assertEquals(0, large.getFile().length() % 16384);
+        assertEquals(0, small.getFile().length() % 1024);
+        assertTrue(large.getFile().length() > 16384L * large.numPages());
+
+        HeapPage p = (HeapPage) large.readPage(new HeapPageId(large.getId(), 0));
+        assertEquals(16384, p.getPageData().length);
+        assertEquals(perLarge, p.getNumSlots());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(large, largeTuples);
+        SystemTestUtil.matchTuples(small, smallTuples);
+    }
+
+    /**
+     * The buffer pool holds fewer large pages than default-sized ones
+     */
+    @Test public void poolBytes() throws Exception {
+        insert(large, 10000);
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = new HeapFileIterator(tid, large, false);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(10000, count);
+        int resident = 0;
+        for (int i = 0; i < large.numPages(); i++) {
+            if (bp.findPage(new HeapPageId(large.getId(), i)) != null)
+                resident++;
+        }
+        // 8 default pages make room for 2 pages of 16KB
+        assertTrue(resident <= 2);
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Slotted pages address their records with 16-bit offsets, so they may
+     * be as large as 64KB but no larger
+     */
+    @Test public void slottedLimit() throws Exception {
+        File f = File.createTempFile("pagesize", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(f.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        try {
+            new HeapFile(f, td, false, PageFormat.SLOTTED, 1 << 17);
+            fail("128KB slotted pages accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        HeapFile hf = new HeapFile(f, td, false, PageFormat.SLOTTED, SlottedPage.MAX_PAGE_SIZE);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 4000; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("v" + i, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1, hf.numPages()); // offsets well past 32KB, which a signed short would wrap
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < 4000; i++) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("v" + i, Type.STRING_LEN), t.getField(1));
+        }
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageSizeTest.class);
+    }
+}
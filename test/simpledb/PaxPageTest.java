@@ -0,0 +1,157 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxPageTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private HeapFile hf;
+    private HeapPageId pid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = Utility.getTupleDesc(3);
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(f.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+        hf = new HeapFile(f, td, false, PageFormat.PAX);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        pid = new HeapPageId(hf.getId(), 0);
+    }
+
+    /**
+     * Unit test for PaxPage.insertTuple(), checking that each field's values
+     * are stored together
+     */
+    @Test public void insertTuple() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        int n = page.getNumSlots();
+        assertEquals(PageFormat.FIXED.capacity(td), n);
+        for (int i = 0; i < n; i++)
+            page.insertTuple(Utility.getTuple(new int[] { i, 1000 + i, 2000 + i }, 3));
+        try {
+            page.insertTuple(Utility.getHeapTuple(0, 3));
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+
+        // field 1 of every slot follows the header and all of field 0
+        ByteBuffer image = ByteBuffer.wrap(page.getPageData());
+        int minipage = (n + 7) / 8 + n * 4;
+        for (int i = 0; i < n; i++)
+            assertEquals(1000 + i, image.getInt(minipage + 4 * i));
+
+        PaxPage copy = new PaxPage(pid, page.getPageData());
+        assertEquals(0, copy.getNumEmptySlots());
+        for (int i = 0; i < n; i++) {
+            assertEquals(new IntField(2000 + i), copy.getField(i, 2));
+            assertEquals(new IntField(i), copy.getTuple(i).getField(0));
+        }
+    }
+
+    /**
+     * Unit test for PaxPage.deleteTuple() and getBeforeImage()
+     */
+    @Test public void deleteTuple() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        Tuple first = Utility.getHeapTuple(1, 3);
+        page.insertTuple(first);
+        page.setBeforeImage();
+        page.insertTuple(Utility.getHeapTuple(2, 3));
+        page.deleteTuple(first);
+        assertFalse(page.isSlotUsed(0));
+        assertTrue(page.isSlotUsed(1));
+        assertEquals(1, page.nextUsedSlot(0));
+
+        PaxPage before = (PaxPage) page.getBeforeImage();
+        assertEquals(new IntField(1), before.getField(0, 0));
+        assertNull(before.getTuple(1));
+
+        // the freed slot is taken first, and holds no trace of the old tuple
+        Tuple t = Utility.getHeapTuple(3, 3);
+        page.insertTuple(t);
+        assertEquals(0, t.getRecordId().tupleno());
+        assertEquals(new IntField(3), new PaxPage(pid, page.getPageData()).getField(0, 1));
+    }
+
+    /**
+     * HeapFile reads and writes PAX pages through the buffer pool
+     */
+    @Test public void heapFile() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 1000; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 3));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            for (int j = 0; j < 3; j++)
+                row.add(i);
+            tuples.add(row);
+        }
+        bp.transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * A Filter over a scan of a PAX table checks its predicate on the
+     * minipage of the field it compares, and builds only the tuples that
+     * pass
+     */
+    @Test public void filterScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        int expected = 0;
+        for (int i = 0; i < 2000; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getTuple(new int[] { i, i % 7, -i }, 3));
+            if (i % 7 == 3)
+                expected++;
+        }
+        bp.transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        Filter op = new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(3)), scan);
+        op.open();
+        int count = 0;
+        while (op.hasNext()) {
+            Tuple t = op.next();
+            int i = ((IntField) t.getField(0)).getValue();
+            assertEquals(3, i % 7);
+            assertEquals(new IntField(-i), t.getField(2));
+            // the tuple was built by its page, which kept it
+            PaxPage page = (PaxPage) Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_ONLY);
+            assertTrue(t == page.getTuple(t.getRecordId().tupleno()));
+            count++;
+        }
+        op.close();
+        assertEquals(expected, count);
+        assertTrue(scan.pushDown(op.getPredicate()));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxPageTest.class);
+    }
+}
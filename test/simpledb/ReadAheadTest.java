@@ -0,0 +1,102 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+    private static final int PAGES = 10;
+
+    private HeapFile f;
+    private BufferPool bp;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // 504 two-column tuples fill a page
+        f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    private PageId page(int pgNo) {
+        return new HeapPageId(f.getId(), pgNo);
+    }
+
+    /** Wait until nothing is being read for the table. */
+    private void settle() throws InterruptedException {
+        for (int i = 0; i < PAGES; i++) {
+            while (bp.isLoading(page(i)))
+                Thread.sleep(5);
+        }
+        Thread.sleep(50);
+    }
+
+    /**
+     * Unit test for ReadAhead.beforeAccess() on a sequential run
+     */
+    @Test public void sequentialRunLoadsNextPages() throws Exception {
+        ReadAhead ra = new ReadAhead(bp, f.getId(), PAGES, null);
+        ra.beforeAccess(0);
+        settle();
+        for (int i = 1; i <= ReadAhead.INITIAL_WINDOW; i++)
+            assertTrue(bp.isCachedOrLoading(page(i)));
+        assertFalse(bp.isCachedOrLoading(page(ReadAhead.INITIAL_WINDOW + 1)));
+        assertFalse(bp.isCachedOrLoading(page(0)));
+    }
+
+    /**
+     * Unit test for ReadAhead.beforeAccess() on random access
+     */
+    @Test public void randomAccessDoesNotLoad() throws Exception {
+        ReadAhead ra = new ReadAhead(bp, f.getId(), PAGES, null);
+        ra.beforeAccess(5);
+        ra.beforeAccess(2);
+        settle();
+        for (int i = 0; i < PAGES; i++)
+            assertFalse(bp.isCachedOrLoading(page(i)));
+    }
+
+    /**
+     * Unit test for the read-ahead window shrinking when pages read ahead
+     * are gone before the scan reaches them
+     */
+    @Test public void windowShrinksOnWaste() throws Exception {
+        ReadAhead ra = new ReadAhead(bp, f.getId(), PAGES, null);
+        ra.beforeAccess(0);
+        settle();
+        bp.discardPage(page(1));
+        ra.beforeAccess(1);
+        assertEquals(ReadAhead.INITIAL_WINDOW / 2, ra.getWindow());
+        settle();
+    }
+
+    /**
+     * A scan through the iterator still sees every tuple
+     */
+    @Test public void scanSeesEveryTuple() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(504 * PAGES, count);
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
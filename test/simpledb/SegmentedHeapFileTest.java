@@ -0,0 +1,143 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SegmentedHeapFileTest extends SimpleDbTestBase {
+    private static final int SEGMENT_PAGES = 4;
+
+    private File file;
+    private SegmentedHeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("segmented", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        for (int k = 1; k < 10; k++)
+            SegmentedHeapFile.segmentFile(file, k).deleteOnExit();
+        hf = open();
+        tuples = new ArrayList<ArrayList<Integer>>();
+    }
+
+    private SegmentedHeapFile open() {
+        SegmentedHeapFile f = new SegmentedHeapFile(file, Utility.getTupleDesc(2), PageFormat.FIXED, SEGMENT_PAGES);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    private Tuple tuple(int i) {
+        ArrayList<Integer> row = new ArrayList<Integer>();
+        row.add(i);
+        row.add(-i);
+        tuples.add(row);
+        return Utility.getTuple(new int[] { i, -i }, 2);
+    }
+
+    /**
+     * Unit test for SegmentedHeapFile.writePage() through inserts, which
+     * start a new segment whenever the last one is full
+     */
+    @Test public void insertTuple() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 504 * 10; i++)
+            Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(i));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(10, hf.numPages());
+        assertEquals(3, hf.getNumSegments());
+        assertEquals(2L * BufferPool.PAGE_SIZE, SegmentedHeapFile.segmentFile(file, 2).length());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SegmentedHeapFile reopened = open();
+        assertEquals(10, reopened.numPages());
+        SystemTestUtil.matchTuples(reopened, tuples);
+    }
+
+    /**
+     * Unit test for SegmentedHeapFile.bulkInsert(), whose writes span
+     * segments
+     */
+    @Test public void bulkInsert() throws Exception {
+        ArrayList<Tuple> load = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 9; i++)
+            load.add(tuple(i));
+        TransactionId tid = new TransactionId();
+        assertEquals(load.size(), hf.bulkInsert(tid, load.iterator()));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(9, hf.numPages());
+        assertEquals(3, hf.getNumSegments());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Unit test for SegmentedHeapFile.iterator(tid, k), which scans the
+     * pages of segment k only
+     */
+    @Test public void segmentIterator() throws Exception {
+        ArrayList<Tuple> load = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 9 + 10; i++)
+            load.add(tuple(i));
+        TransactionId tid = new TransactionId();
+        hf.bulkInsert(tid, load.iterator());
+        assertEquals(3, hf.getNumSegments());
+
+        int[] expected = { 504 * 4, 504 * 4, 504 + 10, 0 };
+        HashSet<Integer> seen = new HashSet<Integer>();
+        for (int k = 0; k < expected.length; k++) {
+            DbFileIterator it = hf.iterator(tid, k);
+            it.open();
+            int count = 0;
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                assertEquals(k, t.getRecordId().getPageId().pageNumber() / SEGMENT_PAGES);
+                assertTrue(seen.add(((IntField) t.getField(0)).getValue()));
+                count++;
+            }
+            it.close();
+            assertEquals(expected[k], count);
+        }
+        assertEquals(load.size(), seen.size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Pages more than 2GB into a memory-mapped file are read at the right
+     * offset
+     */
+    @Test public void pastTwoGigabytes() throws Exception {
+        File f = File.createTempFile("large", ".dat");
+        f.deleteOnExit();
+        HeapFile large = new HeapFile(f, Utility.getTupleDesc(2), true);
+        Database.getCatalog().addTable(large, SystemTestUtil.getUUID());
+        int pgNo = 3 * ((1 << 30) / BufferPool.PAGE_SIZE); // 3GB in; the file is sparse
+        HeapPageId pid = new HeapPageId(large.getId(), pgNo);
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(42, 2));
+        large.writePage(page);
+
+        assertEquals(pgNo + 1, large.numPages());
+        HeapPage read = (HeapPage) large.readPage(pid);
+        assertEquals(new IntField(42), read.getField(0, 0));
+        assertEquals(read.getNumSlots() - 1, read.getNumEmptySlots());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SegmentedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,67 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlotBitmapTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for decoding a header into a SlotBitmap
+     */
+    @Test public void decode() {
+        ByteBuffer page = ByteBuffer.allocate(32);
+        page.put(2, (byte) 0x81); // slots 0 and 7
+        page.put(11, (byte) 0x01); // slot 72
+        page.put(12, (byte) 0xFF); // beyond the last slot, ignored
+        SlotBitmap bits = new SlotBitmap(page, 2, 75);
+        assertEquals(3, bits.getUsed());
+        assertTrue(bits.isSet(0));
+        assertTrue(bits.isSet(7));
+        assertTrue(bits.isSet(72));
+        assertFalse(bits.isSet(8));
+        assertEquals(7, bits.nextSet(1));
+        assertEquals(72, bits.nextSet(8));
+        assertEquals(-1, bits.nextSet(73));
+        assertEquals(1, bits.nextClear(0));
+        assertEquals(73, bits.nextClear(72));
+    }
+
+    /**
+     * Unit test for SlotBitmap.set()
+     */
+    @Test public void set() {
+        ByteBuffer page = ByteBuffer.allocate(16);
+        SlotBitmap bits = new SlotBitmap(page, 0, 70);
+        for (int i = 0; i < 70; i++)
+            bits.set(i, true, page, 0);
+        assertEquals(70, bits.getUsed());
+        assertEquals(-1, bits.nextClear(0));
+        bits.set(65, false, page, 0);
+        bits.set(65, false, page, 0);
+        assertEquals(69, bits.getUsed());
+        assertEquals(65, bits.nextClear(0));
+        assertEquals((byte) 0x3D, page.get(8));
+        assertEquals((byte) 0xFF, page.get(7));
+
+        // the header written through decodes to the same bitmap
+        SlotBitmap again = new SlotBitmap(page, 0, 70);
+        assertEquals(69, again.getUsed());
+        assertFalse(again.isSet(65));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlotBitmapTest.class);
+    }
+}
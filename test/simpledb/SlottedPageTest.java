@@ -0,0 +1,181 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private HeapFile hf;
+    private HeapPageId pid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, new String[] { "id", "name" });
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(f.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
+        hf = new HeapFile(f, td, false, PageFormat.SLOTTED);
+        Database.getCatalog().addTable(hf, "slotted");
+        pid = new HeapPageId(hf.getId(), 0);
+    }
+
+    private Tuple tuple(int id, String name) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private static String name(int i) {
+        return "name" + i;
+    }
+
+    /**
+     * Unit test for SlottedPage.insertTuple() and getTuple()
+     */
+    @Test public void insertTuple() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        assertEquals(0, page.getNumSlots());
+        int n = 0;
+        while (page.getFreeSpace() >= PageFormat.SLOTTED.spaceNeeded(tuple(n, name(n)))) {
+            Tuple t = tuple(n, name(n));
+            page.insertTuple(t);
+            assertEquals(n, t.getRecordId().tupleno());
+            n++;
+        }
+        // short strings pack far more rows than fixed-size slots
+        assertTrue(n > 2 * PageFormat.FIXED.capacity(td));
+        try {
+            page.insertTuple(tuple(n, name(n)));
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+
+        // the image reads back the same
+        SlottedPage copy = new SlottedPage(pid, page.getPageData());
+        assertEquals(n, copy.getNumSlots());
+        assertEquals(0, copy.getNumEmptySlots());
+        for (int i = 0; i < n; i++) {
+            assertEquals(new IntField(i), copy.getField(i, 0));
+            assertEquals(name(i), ((StringField) copy.getField(i, 1)).getValue());
+            assertEquals(name(i), ((StringField) copy.getTuple(i).getField(1)).getValue());
+        }
+    }
+
+    /**
+     * Unit test for SlottedPage.deleteTuple(), including reusing the space
+     */
+    @Test public void deleteTuple() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 100; i++) {
+            Tuple t = tuple(i, name(i));
+            page.insertTuple(t);
+            tuples.add(t);
+        }
+        int free = page.getFreeSpace();
+        for (int i = 0; i < 100; i += 2)
+            page.deleteTuple(tuples.get(i));
+        assertFalse(page.isSlotUsed(0));
+        assertTrue(page.isSlotUsed(1));
+        assertEquals(50, page.getNumEmptySlots());
+        assertTrue(page.getFreeSpace() > free);
+
+        // slot numbers of the survivors do not change, and the holes are reused
+        while (page.getFreeSpace() >= PageFormat.SLOTTED.spaceNeeded(tuple(0, "a longer name than before")))
+            page.insertTuple(tuple(0, "a longer name than before"));
+        for (int i = 1; i < 100; i += 2)
+            assertEquals(new IntField(i), page.getField(i, 0));
+
+        Iterator<Tuple> it = new SlottedPage(pid, page.getPageData()).iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(page.getNumSlots() - page.getNumEmptySlots(), count);
+    }
+
+    /**
+     * Unit test for SlottedPage.getBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "one"));
+        page.setBeforeImage();
+        page.insertTuple(tuple(2, "two"));
+        SlottedPage before = (SlottedPage) page.getBeforeImage();
+        assertEquals(1, before.getNumSlots());
+        assertEquals("one", ((StringField) before.getField(0, 1)).getValue());
+        assertNull(before.getTuple(1));
+    }
+
+    /**
+     * HeapFile reads and writes slotted pages through the buffer pool
+     */
+    @Test public void heapFile() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        for (int i = 0; i < 2000; i++)
+            bp.insertTuple(tid, hf.getId(), tuple(i, name(i)));
+        bp.transactionComplete(tid);
+        // fixed-size slots would need 66 pages
+        assertTrue(hf.numPages() < 30);
+
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        ArrayList<Tuple> even = new ArrayList<Tuple>();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertEquals(name(id), ((StringField) t.getField(1)).getValue());
+            if (id % 2 == 0)
+                even.add(t);
+            count++;
+        }
+        it.close();
+        assertEquals(2000, count);
+        for (Tuple t : even)
+            bp.deleteTuple(tid, t);
+        bp.transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        it = hf.iterator(tid);
+        it.open();
+        count = 0;
+        while (it.hasNext()) {
+            assertEquals(1, ((IntField) it.next().getField(0)).getValue() % 2);
+            count++;
+        }
+        it.close();
+        assertEquals(1000, count);
+        bp = Database.getBufferPool();
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
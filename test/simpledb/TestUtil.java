@@ -209,6 +209,10 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public Page readPage(PageId id, java.nio.ByteBuffer frame) throws NoSuchElementException {
+            throw new RuntimeException("not implemented");
+        }
+
         public int numPages() {
             throw new RuntimeException("not implemented");
         }
@@ -227,10 +231,19 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public int bulkInsert(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+            throw new RuntimeException("not implemented");
+        }
+
         public int bytesPerPage() {
             throw new RuntimeException("not implemented");
         }
 
+        public int getPageSize() {
+            return BufferPool.getPageSize();
+        }
+
         public int getId() {
             return tableid;
         }
@@ -382,6 +395,7 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            new File(emptyFile.getPath() + HeapFile.END_SUFFIX).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
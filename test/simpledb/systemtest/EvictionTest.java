@@ -40,6 +40,30 @@ public class EvictionTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * A sequential scan over a table larger than the pool goes through a scan
+     * ring, so a page another query is using stays resident.
+     */
+    @Test public void testLargeScanKeepsHotPages() throws IOException, DbException, TransactionAbortedException {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        HeapFile large = SystemTestUtil.createRandomHeapFile(2, 1024*20, null, null);
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES);
+        assertTrue(large.numPages() > BUFFER_PAGES);
+
+        TransactionId tid = new TransactionId();
+        HeapPageId hotPid = new HeapPageId(hot.getId(), 0);
+        pool.getPage(tid, hotPid, Permissions.READ_ONLY);
+
+        SeqScan scan = new SeqScan(tid, large.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+        }
+        scan.close();
+        assertNotNull(pool.findPage(hotPid));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     public static void insertRow(HeapFile f, Transaction t) throws DbException,
             TransactionAbortedException {
         // Create a row to insert